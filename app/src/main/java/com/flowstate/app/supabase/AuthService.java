@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import com.flowstate.app.supabase.api.SupabaseAuthApi;
+import com.flowstate.app.supabase.sync.WriteOutbox;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import retrofit2.Call;
@@ -20,10 +21,12 @@ public class AuthService {
     private SupabaseClient supabaseClient;
     private SupabaseAuthApi authApi;
     private Handler mainHandler;
+    private WriteOutbox outbox;
     
     public AuthService(Context context) {
         this.supabaseClient = SupabaseClient.getInstance(context);
         this.authApi = supabaseClient.getAuthApi();
+        this.outbox = WriteOutbox.getInstance(context);
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
     
@@ -39,10 +42,14 @@ public class AuthService {
                                  Response<SupabaseAuthApi.AuthResponse> response) {
                 if (response.isSuccessful() && response.body() != null) {
                     SupabaseAuthApi.AuthResponse authResponse = response.body();
-                    supabaseClient.setAccessToken(authResponse.access_token);
-                    supabaseClient.setRefreshToken(authResponse.refresh_token);
+                    supabaseClient.setSession(authResponse.access_token, authResponse.refresh_token);
                     if (authResponse.user != null) {
                         supabaseClient.setUserId(authResponse.user.id);
+                        // Send any writes queued while signed out; without email confirmation
+                        // there is no session yet, and the next sign-in drains them
+                        if (authResponse.access_token != null) {
+                            outbox.drain();
+                        }
                         // Create profile if username is provided
                         // Pass the access token directly to avoid timing issues with SharedPreferences
                         if (username != null && authResponse.user.id != null && authResponse.access_token != null) {
@@ -82,11 +89,12 @@ public class AuthService {
                                  Response<SupabaseAuthApi.AuthResponse> response) {
                 if (response.isSuccessful() && response.body() != null) {
                     SupabaseAuthApi.AuthResponse authResponse = response.body();
-                    supabaseClient.setAccessToken(authResponse.access_token);
-                    supabaseClient.setRefreshToken(authResponse.refresh_token);
+                    supabaseClient.setSession(authResponse.access_token, authResponse.refresh_token);
                     if (authResponse.user != null) {
                         supabaseClient.setUserId(authResponse.user.id);
                     }
+                    // Send any writes queued while signed out
+                    outbox.drain();
                     mainHandler.post(() -> callback.onSuccess(authResponse.user));
                 } else {
                     String errorMessage = parseErrorMessage(response, "Sign in failed");
@@ -106,14 +114,14 @@ public class AuthService {
      * Sign out the current user
      */
     public void signOut(AuthCallback callback) {
-        String accessToken = supabaseClient.getAccessToken();
-        if (accessToken == null || accessToken.isEmpty()) {
+        String authorization = supabaseClient.getAuthorizationHeader();
+        if (authorization == null) {
             supabaseClient.clearAuth();
             mainHandler.post(() -> callback.onSuccess(null));
             return;
         }
         
-        authApi.signOut("Bearer " + accessToken).enqueue(new Callback<Void>() {
+        authApi.signOut(authorization).enqueue(new Callback<Void>() {
             @Override
             public void onResponse(Call<Void> call, Response<Void> response) {
                 supabaseClient.clearAuth();
@@ -133,13 +141,13 @@ public class AuthService {
      * Get current authenticated user
      */
     public void getCurrentUser(AuthCallback callback) {
-        String accessToken = supabaseClient.getAccessToken();
-        if (accessToken == null || accessToken.isEmpty()) {
+        String authorization = supabaseClient.getAuthorizationHeader();
+        if (authorization == null) {
             mainHandler.post(() -> callback.onSuccess(null));
             return;
         }
         
-        authApi.getCurrentUser("Bearer " + accessToken).enqueue(new Callback<SupabaseAuthApi.UserResponse>() {
+        authApi.getCurrentUser(authorization).enqueue(new Callback<SupabaseAuthApi.UserResponse>() {
             @Override
             public void onResponse(Call<SupabaseAuthApi.UserResponse> call, 
                                  Response<SupabaseAuthApi.UserResponse> response) {
@@ -219,8 +227,8 @@ public class AuthService {
         android.util.Log.d("AuthService", "Creating profile for user: " + userId);
         android.util.Log.d("AuthService", "Profile data: " + profileData.toString());
         
-        // Insert profile into Supabase
-        postgrestApi.insertProfile(authorization, apikey, "return=representation", profileData)
+        // Insert profile into Supabase; a retried sign-up keeps the profile already created
+        postgrestApi.insertProfile(authorization, apikey, "resolution=ignore-duplicates,return=minimal", "id", profileData)
                 .enqueue(new retrofit2.Callback<Void>() {
                     @Override
                     public void onResponse(retrofit2.Call<Void> call, retrofit2.Response<Void> response) {
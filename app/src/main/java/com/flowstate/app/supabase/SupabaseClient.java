@@ -3,15 +3,32 @@ package com.flowstate.app.supabase;
 import android.content.Context;
 import android.content.SharedPreferences;
 import com.flowstate.app.BuildConfig;
+import com.flowstate.app.data.models.BiometricData;
+import com.flowstate.app.data.models.EnergyPrediction;
+import com.flowstate.app.data.models.ReactionTimeData;
+import com.flowstate.app.data.models.TypingSpeedData;
 import com.flowstate.app.supabase.api.SupabaseAuthApi;
 import com.flowstate.app.supabase.api.SupabasePostgrestApi;
+import com.flowstate.app.supabase.http.CircuitBreaker;
+import com.flowstate.app.supabase.http.EndpointLogging;
+import com.flowstate.app.supabase.http.NetworkMetrics;
+import com.flowstate.app.supabase.http.QueryCache;
+import com.flowstate.app.supabase.http.RequestScheduler;
+import com.flowstate.app.supabase.http.RetryInterceptor;
+import com.flowstate.app.supabase.json.BiometricDataAdapter;
+import com.flowstate.app.supabase.json.EnergyPredictionAdapter;
+import com.flowstate.app.supabase.json.ReactionTimeDataAdapter;
+import com.flowstate.app.supabase.json.TimestampAdapter;
+import com.flowstate.app.supabase.json.TypingSpeedDataAdapter;
+import com.flowstate.app.supabase.realtime.RealtimeClient;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,20 +52,77 @@ public class SupabaseClient {
     private static final String KEY_REFRESH_TOKEN = "refresh_token";
     private static final String KEY_USER_ID = "user_id";
     
+    // Read cache sizing; cognitive tests and predictions change rarely, readings often
+    private static final long QUERY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final long QUERY_CACHE_TTL_MS = 30_000;
+    private static final long QUERY_CACHE_SLOW_TABLE_TTL_MS = 5 * 60_000;
+    
+    // Concurrent requests per priority class; background covers uploads and bulk syncs
+    private static final int FOREGROUND_REQUESTS = 6;
+    private static final int BACKGROUND_REQUESTS = 2;
+    // The scheduler enforces concurrency, so the dispatcher must never be what requests queue on
+    private static final int DISPATCHER_MAX_REQUESTS = 128;
+    
+    // Consecutive failed requests before calls fail fast, and for how long
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MS = 30_000;
+    
     private static SupabaseClient instance;
     private Retrofit retrofit;
     private SupabaseAuthApi authApi;
     private SupabasePostgrestApi postgrestApi;
     private SharedPreferences prefs;
     private Gson gson;
+    private QueryCache queryCache;
+    private TokenRefresher tokenRefresher;
+    private NetworkMetrics networkMetrics;
+    private RequestScheduler requestScheduler;
+    private RetryInterceptor retryInterceptor;
+    private RealtimeClient realtime;
+    private EndpointLogging logging;
+    // Read on every request; replaced as a whole so readers never see a half-updated session
+    private volatile Credentials credentials;
     
     private SupabaseClient(Context context) {
         this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
+        this.credentials = new Credentials(
+                prefs.getString(KEY_ACCESS_TOKEN, null),
+                prefs.getString(KEY_REFRESH_TOKEN, null),
+                prefs.getString(KEY_USER_ID, null));
+        // Row types are decoded by streaming adapters instead of going through Map<String, Object>
+        this.gson = new GsonBuilder()
+                .registerTypeAdapter(Date.class, new TimestampAdapter())
+                .registerTypeAdapter(BiometricData.class, new BiometricDataAdapter())
+                .registerTypeAdapter(TypingSpeedData.class, new TypingSpeedDataAdapter())
+                .registerTypeAdapter(ReactionTimeData.class, new ReactionTimeDataAdapter())
+                .registerTypeAdapter(EnergyPrediction.class, new EnergyPredictionAdapter())
+                .create();
+        
+        this.queryCache = new QueryCache(QUERY_CACHE_BYTES, QUERY_CACHE_TTL_MS);
+        queryCache.setTtl("typing_speed_tests", QUERY_CACHE_SLOW_TABLE_TTL_MS);
+        queryCache.setTtl("reaction_time_tests", QUERY_CACHE_SLOW_TABLE_TTL_MS);
+        queryCache.setTtl("energy_predictions", QUERY_CACHE_SLOW_TABLE_TTL_MS);
+        // Rollups are rewritten by triggers when their source tables change
+        queryCache.addDerivedTable("heart_rate_readings", "heart_rate_hourly");
+        queryCache.addDerivedTable("heart_rate_readings", "heart_rate_daily");
+        queryCache.addDerivedTable("typing_speed_tests", "cognitive_daily");
+        queryCache.addDerivedTable("reaction_time_tests", "cognitive_daily");
+        // Functions that write tables, seen by the cache only as RPC calls
+        queryCache.addFunctionWrites("store_energy_forecast", "energy_predictions");
+        queryCache.addFunctionWrites("store_energy_forecast", "energy_prediction_factors");
+        
+        this.tokenRefresher = new TokenRefresher(this);
+        
+        // Request logging is debug-only, and bodies are logged only for opted-in endpoints
+        this.logging = new EndpointLogging(BuildConfig.DEBUG);
+        this.networkMetrics = new NetworkMetrics();
+        this.requestScheduler = new RequestScheduler(FOREGROUND_REQUESTS, BACKGROUND_REQUESTS);
+        this.retryInterceptor = new RetryInterceptor(
+                new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MS), networkMetrics);
         
-        // Setup OkHttp with logging
-        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-        logging.setLevel(HttpLoggingInterceptor.Level.BODY);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(DISPATCHER_MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(DISPATCHER_MAX_REQUESTS);
         
         OkHttpClient okHttpClient = new OkHttpClient.Builder()
                 .addInterceptor(logging)
@@ -60,16 +134,27 @@ public class SupabaseClient {
                             .header("Content-Type", "application/json");
                     
                     // Add auth token if available and not already present
-                    // (Some API methods pass headers explicitly)
-                    if (original.header("Authorization") == null) {
-                        String accessToken = getAccessToken();
-                        if (accessToken != null && !accessToken.isEmpty()) {
-                            requestBuilder.header("Authorization", "Bearer " + accessToken);
+                    // (Some API methods pass headers explicitly). Token grants authenticate
+                    // with the request body, and an expired bearer token must not be sent there.
+                    if (original.header("Authorization") == null
+                            && !original.url().encodedPath().startsWith("/auth/v1/token")) {
+                        String authorization = getAuthorizationHeader();
+                        if (authorization != null) {
+                            requestBuilder.header("Authorization", authorization);
                         }
                     }
                     
                     return chain.proceed(requestBuilder.build());
                 })
+                .addInterceptor(queryCache)
+                // Outside the scheduler, so a request backing off does not hold a slot
+                .addInterceptor(retryInterceptor)
+                // Cache hits never wait for a slot
+                .addInterceptor(requestScheduler)
+                // Inside the cache, so only calls that reach the network are measured
+                .addInterceptor(networkMetrics)
+                .dispatcher(dispatcher)
+                .authenticator(tokenRefresher)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
@@ -79,11 +164,24 @@ public class SupabaseClient {
         this.retrofit = new Retrofit.Builder()
                 .baseUrl(SUPABASE_URL)
                 .client(okHttpClient)
+                // Deliver callbacks on the OkHttp thread; callers decide where results are consumed
+                .callbackExecutor(Runnable::run)
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .build();
         
         this.authApi = retrofit.create(SupabaseAuthApi.class);
         this.postgrestApi = retrofit.create(SupabasePostgrestApi.class);
+        
+        // The realtime socket stays open while idle; Phoenix heartbeats detect a dead connection
+        OkHttpClient realtimeHttpClient = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.SECONDS)
+                .build();
+        this.realtime = new RealtimeClient(realtimeHttpClient, SUPABASE_URL, SUPABASE_ANON_KEY,
+                this::getAccessToken, queryCache);
+        
+        // Refresh ahead of expiry for a session restored from a previous run
+        tokenRefresher.schedule(getAccessToken());
     }
     
     public static synchronized SupabaseClient getInstance(Context context) {
@@ -101,40 +199,118 @@ public class SupabaseClient {
         return postgrestApi;
     }
     
+    public Gson getGson() {
+        return gson;
+    }
+    
+    /**
+     * Per-endpoint latency, byte, status and retry metrics
+     */
+    public NetworkMetrics getNetworkMetrics() {
+        return networkMetrics;
+    }
+    
+    /**
+     * Per-priority queue depth and wait time of requests admitted to the network
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+    
+    /**
+     * Retry count and circuit breaker state for PostgREST calls
+     */
+    public RetryInterceptor getRetryInterceptor() {
+        return retryInterceptor;
+    }
+    
+    /**
+     * Log full bodies for one endpoint path prefix; has no effect in release builds
+     */
+    public void logBodies(String pathPrefix) {
+        logging.logBodies(pathPrefix);
+    }
+    
+    /**
+     * Cache in front of table reads, exposing hit and miss counters
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+    
+    /**
+     * Websocket subscriptions to row changes, e.g. for ai_schedules and scheduled_tasks;
+     * repositories follow their own table through {@code watch}
+     */
+    public RealtimeClient getRealtime() {
+        return realtime;
+    }
+    
+    public TokenRefresher getTokenRefresher() {
+        return tokenRefresher;
+    }
+    
     public String getAccessToken() {
-        return prefs.getString(KEY_ACCESS_TOKEN, null);
+        return credentials.accessToken;
+    }
+    
+    /**
+     * "Bearer" header value for the current access token, built once per token,
+     * or null when signed out
+     */
+    public String getAuthorizationHeader() {
+        return credentials.authorizationHeader;
     }
     
     public void setAccessToken(String accessToken) {
-        prefs.edit().putString(KEY_ACCESS_TOKEN, accessToken).commit(); // Use commit() to ensure it's saved synchronously
+        synchronized (this) {
+            Credentials current = credentials;
+            updateCredentials(new Credentials(accessToken, current.refreshToken, current.userId));
+        }
+        // Outside the lock: the refresher calls back into this client while holding its own
+        tokenRefresher.schedule(accessToken);
+        realtime.setAccessToken(accessToken);
     }
     
     public String getRefreshToken() {
-        return prefs.getString(KEY_REFRESH_TOKEN, null);
+        return credentials.refreshToken;
     }
     
-    public void setRefreshToken(String refreshToken) {
-        prefs.edit().putString(KEY_REFRESH_TOKEN, refreshToken).apply();
+    public synchronized void setRefreshToken(String refreshToken) {
+        Credentials current = credentials;
+        updateCredentials(new Credentials(current.accessToken, refreshToken, current.userId));
+    }
+    
+    /**
+     * Replace both tokens at once, as returned by a sign-in or refresh
+     */
+    public void setSession(String accessToken, String refreshToken) {
+        synchronized (this) {
+            Credentials current = credentials;
+            updateCredentials(new Credentials(accessToken, refreshToken, current.userId));
+        }
+        tokenRefresher.schedule(accessToken);
+        realtime.setAccessToken(accessToken);
     }
     
     public String getUserId() {
-        return prefs.getString(KEY_USER_ID, null);
+        return credentials.userId;
     }
     
-    public void setUserId(String userId) {
-        prefs.edit().putString(KEY_USER_ID, userId).apply();
+    public synchronized void setUserId(String userId) {
+        Credentials current = credentials;
+        updateCredentials(new Credentials(current.accessToken, current.refreshToken, userId));
     }
     
     public void clearAuth() {
-        prefs.edit()
-                .remove(KEY_ACCESS_TOKEN)
-                .remove(KEY_REFRESH_TOKEN)
-                .remove(KEY_USER_ID)
-                .apply();
+        updateCredentials(new Credentials(null, null, null));
+        queryCache.clear();
+        tokenRefresher.cancel();
+        realtime.close();
     }
     
     public boolean isAuthenticated() {
-        return getAccessToken() != null && !getAccessToken().isEmpty();
+        return credentials.authorizationHeader != null;
     }
     
     public String getSupabaseUrl() {
@@ -144,5 +320,42 @@ public class SupabaseClient {
     public String getSupabaseAnonKey() {
         return SUPABASE_ANON_KEY;
     }
+    
+    /**
+     * Swap the in-memory credentials, then persist them in the background.
+     * Memory is the source of truth while the process runs, so nothing waits on disk.
+     */
+    private synchronized void updateCredentials(Credentials updated) {
+        credentials = updated;
+        SharedPreferences.Editor editor = prefs.edit();
+        putOrRemove(editor, KEY_ACCESS_TOKEN, updated.accessToken);
+        putOrRemove(editor, KEY_REFRESH_TOKEN, updated.refreshToken);
+        putOrRemove(editor, KEY_USER_ID, updated.userId);
+        editor.apply();
+    }
+    
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+    
+    /**
+     * Immutable snapshot of the session
+     */
+    private static class Credentials {
+        final String accessToken;
+        final String refreshToken;
+        final String userId;
+        final String authorizationHeader;
+        
+        Credentials(String accessToken, String refreshToken, String userId) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.userId = userId;
+            this.authorizationHeader = accessToken != null && !accessToken.isEmpty() ? "Bearer " + accessToken : null;
+        }
+    }
 }
-
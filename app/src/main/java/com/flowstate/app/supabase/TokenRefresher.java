@@ -0,0 +1,179 @@
+package com.flowstate.app.supabase;
+
+import android.util.Base64;
+import android.util.Log;
+import com.flowstate.app.supabase.api.SupabaseAuthApi;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Authenticator;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the Supabase access token valid.
+ *
+ * Refreshes proactively shortly before the JWT {@code exp} claim, so queued and background
+ * requests normally never see an expired token. If a request still gets a 401, the
+ * {@link Authenticator} refreshes and retries it once. Refreshes are single-flight:
+ * concurrent 401s wait for one refresh and then all retry with the new token.
+ */
+public class TokenRefresher implements Authenticator {
+    
+    private static final String TAG = "TokenRefresher";
+    
+    // Refresh this long before expiry
+    private static final long REFRESH_MARGIN_MS = 60_000;
+    private static final long RETRY_DELAY_MS = 30_000;
+    private static final String AUTH_PATH_PREFIX = "/auth/v1/";
+    
+    private final SupabaseClient supabaseClient;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledRefresh;
+    
+    TokenRefresher(SupabaseClient supabaseClient) {
+        this.supabaseClient = supabaseClient;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "supabase-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        Request request = response.request();
+        // Never refresh in response to auth endpoints themselves, including the refresh call
+        if (request.url().encodedPath().startsWith(AUTH_PATH_PREFIX)) {
+            return null;
+        }
+        // Already retried once with a fresh token; give up rather than loop
+        if (response.priorResponse() != null && response.priorResponse().code() == 401) {
+            return null;
+        }
+        String failedToken = bearerToken(request.header("Authorization"));
+        String token = refresh(failedToken);
+        if (token == null) {
+            return null;
+        }
+        return request.newBuilder()
+                .header("Authorization", "Bearer " + token)
+                .build();
+    }
+    
+    /**
+     * Refresh now if the current token expires within the refresh margin. Blocking; for
+     * background threads about to send requests.
+     */
+    public void ensureFresh() {
+        String token = supabaseClient.getAccessToken();
+        if (token != null && expiresAt(token) - System.currentTimeMillis() < REFRESH_MARGIN_MS) {
+            try {
+                refresh(token);
+            } catch (IOException e) {
+                Log.w(TAG, "Token refresh failed", e);
+            }
+        }
+    }
+    
+    /**
+     * Schedule the next proactive refresh for {@code token}, replacing any pending one
+     */
+    public synchronized void schedule(String token) {
+        cancel();
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        long expiresAt = expiresAt(token);
+        if (expiresAt == Long.MAX_VALUE) {
+            return;
+        }
+        long delay = Math.max(0, expiresAt - REFRESH_MARGIN_MS - System.currentTimeMillis());
+        scheduledRefresh = scheduler.schedule(() -> refreshScheduled(token), delay, TimeUnit.MILLISECONDS);
+    }
+    
+    public synchronized void cancel() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+    
+    private void refreshScheduled(String token) {
+        try {
+            if (refresh(token) != null) {
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Scheduled token refresh failed, retrying", e);
+        }
+        synchronized (this) {
+            // Still holding the same token, e.g. offline; try again shortly
+            if (token.equals(supabaseClient.getAccessToken())) {
+                scheduledRefresh = scheduler.schedule(() -> refreshScheduled(token), RETRY_DELAY_MS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Exchange the refresh token for a new session unless {@code staleToken} has already
+     * been replaced, returning the current access token or null if refreshing failed
+     */
+    private synchronized String refresh(String staleToken) throws IOException {
+        String current = supabaseClient.getAccessToken();
+        if (current != null && !current.equals(staleToken)) {
+            // Another caller refreshed while this one waited
+            return current;
+        }
+        String refreshToken = supabaseClient.getRefreshToken();
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return null;
+        }
+        retrofit2.Response<SupabaseAuthApi.AuthResponse> response = supabaseClient.getAuthApi()
+                .refreshToken(new SupabaseAuthApi.RefreshTokenRequest(refreshToken))
+                .execute();
+        if (!response.isSuccessful() || response.body() == null || response.body().access_token == null) {
+            Log.w(TAG, "Token refresh rejected: HTTP " + response.code());
+            return null;
+        }
+        SupabaseAuthApi.AuthResponse session = response.body();
+        // Refresh tokens rotate; the old one is no longer valid
+        supabaseClient.setSession(session.access_token, session.refresh_token);
+        return session.access_token;
+    }
+    
+    /**
+     * Expiry of a JWT from its {@code exp} claim in epoch millis, or Long.MAX_VALUE if unreadable
+     */
+    static long expiresAt(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            byte[] payload = Base64.decode(parts[1], Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+            JsonObject claims = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)).getAsJsonObject();
+            if (!claims.has("exp")) {
+                return Long.MAX_VALUE;
+            }
+            return claims.get("exp").getAsLong() * 1000L;
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    private static String bearerToken(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return authorization.substring("Bearer ".length());
+    }
+}
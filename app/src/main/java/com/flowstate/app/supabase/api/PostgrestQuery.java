@@ -0,0 +1,271 @@
+package com.flowstate.app.supabase.api;
+
+import com.flowstate.app.supabase.json.TimestampCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fluent builder for PostgREST read queries, producing the query map and Range header
+ * for {@link SupabasePostgrestApi#select} and {@link SupabasePostgrestApi#selectPage}.
+ *
+ * The first filter on a column is sent as a plain {@code column=op.value} parameter.
+ * Further filters on the same column, and or-groups, are combined into a single
+ * {@code and=(...)} parameter, since a query map cannot repeat a key and a comma-joined
+ * value is not read as two conditions. Values inside logic groups and {@code in} lists
+ * are double-quoted, so timestamps and text containing reserved characters are safe.
+ * Dates are formatted with {@link TimestampCodec}.
+ */
+public final class PostgrestQuery {
+    
+    private final List<String> columns = new ArrayList<>();
+    private final List<Filter> filters = new ArrayList<>();
+    private final List<String> order = new ArrayList<>();
+    private Integer limit;
+    private long rangeFrom = -1;
+    private long rangeTo = -1;
+    
+    /**
+     * Columns to return; without any, PostgREST returns every column
+     */
+    public PostgrestQuery select(String... columns) {
+        for (String column : columns) {
+            if (!this.columns.contains(column)) {
+                this.columns.add(column);
+            }
+        }
+        return this;
+    }
+    
+    public PostgrestQuery eq(String column, Object value) {
+        return where(Filter.eq(column, value));
+    }
+    
+    public PostgrestQuery neq(String column, Object value) {
+        return where(Filter.neq(column, value));
+    }
+    
+    public PostgrestQuery gt(String column, Object value) {
+        return where(Filter.gt(column, value));
+    }
+    
+    public PostgrestQuery gte(String column, Object value) {
+        return where(Filter.gte(column, value));
+    }
+    
+    public PostgrestQuery lt(String column, Object value) {
+        return where(Filter.lt(column, value));
+    }
+    
+    public PostgrestQuery lte(String column, Object value) {
+        return where(Filter.lte(column, value));
+    }
+    
+    public PostgrestQuery in(String column, Collection<?> values) {
+        return where(Filter.in(column, values));
+    }
+    
+    /**
+     * Rows matching at least one of {@code alternatives}
+     */
+    public PostgrestQuery or(Filter... alternatives) {
+        return where(Filter.or(alternatives));
+    }
+    
+    public PostgrestQuery where(Filter filter) {
+        filters.add(filter);
+        return this;
+    }
+    
+    /**
+     * Append a sort key; call again for tie-breakers
+     */
+    public PostgrestQuery order(String column, boolean ascending) {
+        order.add(column + (ascending ? ".asc" : ".desc"));
+        return this;
+    }
+    
+    public PostgrestQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+    
+    /**
+     * Rows {@code from} to {@code to} inclusive, zero-based, sent as a Range header
+     */
+    public PostgrestQuery range(long from, long to) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range " + from + "-" + to);
+        }
+        this.rangeFrom = from;
+        this.rangeTo = to;
+        return this;
+    }
+    
+    /**
+     * Range header value, or null if no range was set
+     */
+    public String getRange() {
+        return rangeFrom < 0 ? null : rangeFrom + "-" + rangeTo;
+    }
+    
+    public Map<String, String> toQueryMap() {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (!columns.isEmpty()) {
+            params.put("select", join(columns));
+        }
+        List<String> grouped = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (filter.isSimple() && !params.containsKey(filter.column)) {
+                params.put(filter.column, filter.renderValue(false));
+            } else {
+                grouped.add(filter.renderCondition());
+            }
+        }
+        if (!grouped.isEmpty()) {
+            params.put("and", "(" + join(grouped) + ")");
+        }
+        if (!order.isEmpty()) {
+            params.put("order", join(order));
+        }
+        if (limit != null) {
+            params.put("limit", String.valueOf(limit));
+        }
+        return params;
+    }
+    
+    @Override
+    public String toString() {
+        String range = getRange();
+        return toQueryMap() + (range != null ? " range=" + range : "");
+    }
+    
+    private static String join(List<String> parts) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(parts.get(i));
+        }
+        return out.toString();
+    }
+    
+    /**
+     * A single condition or a logic group of conditions
+     */
+    public static final class Filter {
+        private final String column;
+        private final String operator;
+        private final String value;
+        private final List<String> values;
+        private final List<Filter> children;
+        
+        private Filter(String column, String operator, String value, List<String> values, List<Filter> children) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+            this.values = values;
+            this.children = children;
+        }
+        
+        public static Filter eq(String column, Object value) {
+            return compare(column, "eq", value);
+        }
+        
+        public static Filter neq(String column, Object value) {
+            return compare(column, "neq", value);
+        }
+        
+        public static Filter gt(String column, Object value) {
+            return compare(column, "gt", value);
+        }
+        
+        public static Filter gte(String column, Object value) {
+            return compare(column, "gte", value);
+        }
+        
+        public static Filter lt(String column, Object value) {
+            return compare(column, "lt", value);
+        }
+        
+        public static Filter lte(String column, Object value) {
+            return compare(column, "lte", value);
+        }
+        
+        public static Filter in(String column, Collection<?> values) {
+            List<String> rendered = new ArrayList<>(values.size());
+            for (Object value : values) {
+                rendered.add(format(value));
+            }
+            return new Filter(column, "in", null, rendered, null);
+        }
+        
+        public static Filter and(Filter... filters) {
+            return new Filter(null, "and", null, null, Arrays.asList(filters));
+        }
+        
+        public static Filter or(Filter... filters) {
+            return new Filter(null, "or", null, null, Arrays.asList(filters));
+        }
+        
+        private static Filter compare(String column, String operator, Object value) {
+            return new Filter(column, operator, format(value), null, null);
+        }
+        
+        boolean isSimple() {
+            return children == null;
+        }
+        
+        /**
+         * {@code op.value} as used for a top-level parameter or inside a logic group
+         */
+        String renderValue(boolean quoted) {
+            if (values != null) {
+                StringBuilder out = new StringBuilder("in.(");
+                for (int i = 0; i < values.size(); i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    out.append(quote(values.get(i)));
+                }
+                return out.append(')').toString();
+            }
+            return operator + "." + (quoted ? quote(value) : value);
+        }
+        
+        /**
+         * {@code column.op."value"} or {@code and(...)}/{@code or(...)}, for logic groups
+         */
+        String renderCondition() {
+            if (children == null) {
+                return column + "." + renderValue(true);
+            }
+            StringBuilder out = new StringBuilder(operator).append('(');
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(children.get(i).renderCondition());
+            }
+            return out.append(')').toString();
+        }
+        
+        private static String format(Object value) {
+            if (value instanceof Date) {
+                return TimestampCodec.format((Date) value);
+            }
+            return String.valueOf(value);
+        }
+        
+        // Reserved characters (, . : ( ) ") only need quoting, but quoting always is simpler
+        private static String quote(String value) {
+            return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+}
@@ -1,5 +1,12 @@
 package com.flowstate.app.supabase.api;
 
+import com.flowstate.app.data.models.BiometricData;
+import com.flowstate.app.data.models.EnergyPrediction;
+import com.flowstate.app.data.models.ReactionTimeData;
+import com.flowstate.app.data.models.TypingSpeedData;
+import com.flowstate.app.supabase.http.RequestScheduler;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.*;
 
@@ -11,6 +18,75 @@ import java.util.Map;
  */
 public interface SupabasePostgrestApi {
     
+    // Generic read, decoded as a stream by the calling repository's row codec
+    @GET("/rest/v1/{table}")
+    Call<ResponseBody> select(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Path("table") String table,
+        @QueryMap Map<String, String> queryParams
+    );
+    
+    // One page of a keyset-paginated read; range is an items range such as "0-999".
+    // A null priority leaves the request in the default (foreground) class.
+    @GET("/rest/v1/{table}")
+    Call<ResponseBody> selectPage(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Header(RequestScheduler.PRIORITY_HEADER) String priority,
+        @Header("Range-Unit") String rangeUnit,
+        @Header("Range") String range,
+        @Path("table") String table,
+        @QueryMap Map<String, String> queryParams
+    );
+    
+    // Generic bulk write, used by the offline outbox to replay pre-serialized JSON arrays.
+    // Writes name the unique columns in on_conflict and a resolution in Prefer, so a replayed
+    // write updates or skips the existing row instead of duplicating it.
+    @POST("/rest/v1/{table}")
+    Call<Void> insertRows(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
+        @Path("table") String table,
+        @Body RequestBody rows
+    );
+    
+    // One page of a bulk export as CSV. Streamed, so the body is parsed as it arrives
+    // instead of being buffered first.
+    @Streaming
+    @Headers("Accept: text/csv")
+    @GET("/rest/v1/{table}")
+    Call<ResponseBody> selectCsv(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Header(RequestScheduler.PRIORITY_HEADER) String priority,
+        @Header("Range-Unit") String rangeUnit,
+        @Header("Range") String range,
+        @Path("table") String table,
+        @QueryMap Map<String, String> queryParams
+    );
+    
+    // Calls a Postgres function; set-returning functions answer with a JSON array of rows
+    @POST("/rest/v1/rpc/{function}")
+    Call<ResponseBody> rpc(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Path("function") String function,
+        @Body Map<String, Object> params
+    );
+    
+    // Calls a function taking the request body as its single JSON argument, used by the
+    // offline outbox to replay queued calls as one pre-serialized JSON array
+    @POST("/rest/v1/rpc/{function}")
+    Call<Void> rpcRows(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Path("function") String function,
+        @Body RequestBody rows
+    );
+    
     // Profiles
     @GET("/rest/v1/profiles")
     Call<List<Map<String, Object>>> getProfile(
@@ -24,6 +100,7 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> profile
     );
     
@@ -41,11 +118,12 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/heart_rate_readings")
-    Call<List<Map<String, Object>>> getHeartRateReadings(
+    Call<List<BiometricData>> getHeartRateReadings(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @QueryMap Map<String, String> queryParams
@@ -56,25 +134,39 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
+    // Bulk insert/upsert: PostgREST writes a JSON array body in a single statement.
+    // The columns written are named in columns, so a key missing from a row is stored as
+    // NULL rather than the columns being inferred from the first row's keys.
+    @POST("/rest/v1/{table}")
+    Call<Void> upsertRows(
+        @Header("Authorization") String authorization,
+        @Header("apikey") String apikey,
+        @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
+        @Query("columns") String columns,
+        @Path("table") String table,
+        @Body List<Map<String, Object>> rows
+    );
+    
     // Sleep Sessions
     @POST("/rest/v1/sleep_sessions")
     Call<Void> insertSleepSession(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/sleep_sessions")
-    Call<List<Map<String, Object>>> getSleepSessions(
+    Call<List<BiometricData>> getSleepSessions(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
-        @Query("user_id") String userId,
-        @Query("sleep_start") String sleepStartGte,
-        @Query("order") String order
+        @QueryMap Map<String, String> queryParams
     );
     
     // Temperature Readings
@@ -83,16 +175,15 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/temperature_readings")
-    Call<List<Map<String, Object>>> getTemperatureReadings(
+    Call<List<BiometricData>> getTemperatureReadings(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
-        @Query("user_id") String userId,
-        @Query("timestamp") String timestampGte,
-        @Query("order") String order
+        @QueryMap Map<String, String> queryParams
     );
     
     // Typing Speed Tests
@@ -101,11 +192,12 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/typing_speed_tests")
-    Call<List<Map<String, Object>>> getTypingSpeedTests(
+    Call<List<TypingSpeedData>> getTypingSpeedTests(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @QueryMap Map<String, String> queryParams
@@ -117,11 +209,12 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/reaction_time_tests")
-    Call<List<Map<String, Object>>> getReactionTimeTests(
+    Call<List<ReactionTimeData>> getReactionTimeTests(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @QueryMap Map<String, String> queryParams
@@ -133,11 +226,12 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
     @GET("/rest/v1/energy_predictions")
-    Call<List<Map<String, Object>>> getEnergyPredictions(
+    Call<List<EnergyPrediction>> getEnergyPredictions(
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @QueryMap Map<String, String> queryParams
@@ -175,6 +269,7 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
@@ -218,6 +313,7 @@ public interface SupabasePostgrestApi {
         @Header("Authorization") String authorization,
         @Header("apikey") String apikey,
         @Header("Prefer") String prefer,
+        @Query("on_conflict") String onConflict,
         @Body Map<String, Object> data
     );
     
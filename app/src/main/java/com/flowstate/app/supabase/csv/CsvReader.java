@@ -0,0 +1,243 @@
+package com.flowstate.app.supabase.csv;
+
+import okio.BufferedSource;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental reader for the CSV PostgREST returns for {@code Accept: text/csv}.
+ *
+ * Reads the source through a fixed buffer, one field at a time, so memory does not
+ * grow with the size of the response. Fields are RFC 4180: separated by commas,
+ * optionally double-quoted with {@code ""} escaping a quote, rows ending in LF or CRLF.
+ * PostgREST writes NULL as an empty unquoted field.
+ *
+ * {@link #nextField()} returns a view that is reused for the next field. Its
+ * {@code charAt} reads single bytes, which is exact for numbers, timestamps and UUIDs;
+ * use {@code toString()} for text that may hold other characters.
+ */
+public final class CsvReader implements Closeable {
+    
+    private static final int END = -1;
+    
+    private final BufferedSource source;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    
+    private byte[] field = new byte[64];
+    private int fieldLength;
+    private boolean fieldQuoted;
+    private final Field view = new Field();
+    
+    private boolean inRow;
+    private boolean rowEnded = true;
+    
+    public CsvReader(BufferedSource source) {
+        this.source = source;
+    }
+    
+    /**
+     * Move to the next row, skipping any unread fields of the current one.
+     * Returns false once the input is exhausted.
+     */
+    public boolean nextRow() throws IOException {
+        while (inRow && !rowEnded) {
+            readField();
+        }
+        if (peek() == END) {
+            inRow = false;
+            return false;
+        }
+        inRow = true;
+        rowEnded = false;
+        return true;
+    }
+    
+    public boolean hasNextField() {
+        return inRow && !rowEnded;
+    }
+    
+    /**
+     * The next field of the current row, valid until the next read
+     */
+    public CharSequence nextField() throws IOException {
+        requireField();
+        readField();
+        return view;
+    }
+    
+    /**
+     * Whether the field just read was NULL
+     */
+    public boolean wasNull() {
+        return fieldLength == 0 && !fieldQuoted;
+    }
+    
+    public void skipField() throws IOException {
+        requireField();
+        readField();
+    }
+    
+    /**
+     * The next field parsed as an int
+     *
+     * @throws NumberFormatException if it is NULL or not an integer in range
+     */
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Out of int range: " + view);
+        }
+        return (int) value;
+    }
+    
+    /**
+     * The next field parsed as a long
+     *
+     * @throws NumberFormatException if it is NULL or not an integer
+     */
+    public long nextLong() throws IOException {
+        requireField();
+        readField();
+        int i = 0;
+        boolean negative = false;
+        if (fieldLength > 0 && (field[0] == '-' || field[0] == '+')) {
+            negative = field[0] == '-';
+            i = 1;
+        }
+        // Nineteen digits always fit, so overflow is only possible beyond that
+        if (i == fieldLength || fieldLength - i > 19) {
+            throw new NumberFormatException("Not an integer: " + view);
+        }
+        long value = 0;
+        for (; i < fieldLength; i++) {
+            int digit = field[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not an integer: " + view);
+            }
+            value = value * 10 - digit;
+            if (value > 0) {
+                throw new NumberFormatException("Out of long range: " + view);
+            }
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new NumberFormatException("Out of long range: " + view);
+            }
+            value = -value;
+        }
+        return value;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+    
+    private void requireField() {
+        if (!hasNextField()) {
+            throw new IllegalStateException(inRow ? "No more fields in this row" : "Not in a row; call nextRow()");
+        }
+    }
+    
+    private void readField() throws IOException {
+        fieldLength = 0;
+        fieldQuoted = false;
+        int c = read();
+        if (c == '"') {
+            fieldQuoted = true;
+            while (true) {
+                c = read();
+                if (c == END) {
+                    throw new EOFException("Unterminated quoted field");
+                }
+                if (c == '"') {
+                    if (peek() != '"') {
+                        break;
+                    }
+                    read();
+                }
+                append(c);
+            }
+            c = read();
+        } else {
+            while (c != ',' && c != '\n' && c != '\r' && c != END) {
+                append(c);
+                c = read();
+            }
+        }
+        if (c == ',') {
+            return;
+        }
+        if (c == '\r' && peek() == '\n') {
+            read();
+        } else if (c != '\n' && c != '\r' && c != END) {
+            throw new IOException("Unexpected character after quoted field: " + (char) c);
+        }
+        rowEnded = true;
+    }
+    
+    private void append(int c) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, fieldLength * 2);
+        }
+        field[fieldLength++] = (byte) c;
+    }
+    
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return END;
+        }
+        return buffer[position] & 0xff;
+    }
+    
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return END;
+        }
+        return buffer[position++] & 0xff;
+    }
+    
+    private boolean fill() throws IOException {
+        int read = source.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+    
+    /**
+     * The current field's bytes as a character sequence
+     */
+    private final class Field implements CharSequence {
+        @Override
+        public int length() {
+            return fieldLength;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= fieldLength) {
+                throw new IndexOutOfBoundsException("Index " + index + ", length " + fieldLength);
+            }
+            return (char) (field[index] & 0xff);
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+        
+        @Override
+        public String toString() {
+            return new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.flowstate.app.supabase.http;
+
+/**
+ * Stops sending requests to a backend that keeps failing.
+ *
+ * After {@code failureThreshold} consecutive failures (network errors, 429 and 5xx) the
+ * circuit opens and requests fail fast for {@code openMillis}. A single probe request
+ * is then let through: success closes the circuit, failure opens it again.
+ */
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private final int failureThreshold;
+    private final long openMillis;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long openCount;
+    private long rejectedCount;
+    
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+    
+    /**
+     * Whether a request may be sent now. Every permitted request must be followed by
+     * exactly one of {@link #onSuccess}, {@link #onFailure} or {@link #onAbandoned}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                rejectedCount++;
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+    
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+    
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            openCount++;
+        }
+    }
+    
+    /**
+     * The permitted request ended without telling anything about the backend, e.g. it was cancelled
+     */
+    public synchronized void onAbandoned() {
+        probeInFlight = false;
+    }
+    
+    /**
+     * Time until an open circuit lets a probe through, 0 if it is not open
+     */
+    public synchronized long getRemainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openMillis - (System.currentTimeMillis() - openedAt)) : 0;
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+    
+    /**
+     * Number of times the circuit has opened
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+    
+    /**
+     * Requests failed fast while the circuit was open
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+}
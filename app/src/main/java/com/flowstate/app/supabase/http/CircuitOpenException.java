@@ -0,0 +1,15 @@
+package com.flowstate.app.supabase.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} is open
+ */
+public class CircuitOpenException extends IOException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public CircuitOpenException(long retryInMillis) {
+        super("Supabase is unavailable, requests paused for " + retryInMillis + "ms");
+    }
+}
@@ -0,0 +1,60 @@
+package com.flowstate.app.supabase.http;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * HTTP logging that is off unless enabled, and logs bodies only for chosen endpoints.
+ *
+ * When enabled, every call gets a one-line BASIC log; bodies are logged only for
+ * paths starting with a prefix added through {@link #logBodies(String)}, so bulk
+ * uploads and large reads are not buffered and logged by default.
+ */
+public class EndpointLogging implements Interceptor {
+    
+    private final HttpLoggingInterceptor basic = new HttpLoggingInterceptor();
+    private final HttpLoggingInterceptor body = new HttpLoggingInterceptor();
+    private final Set<String> bodyPathPrefixes = new CopyOnWriteArraySet<>();
+    private volatile boolean enabled;
+    
+    public EndpointLogging(boolean enabled) {
+        this.enabled = enabled;
+        basic.setLevel(HttpLoggingInterceptor.Level.BASIC);
+        body.setLevel(HttpLoggingInterceptor.Level.BODY);
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Log full bodies for requests whose path starts with {@code pathPrefix},
+     * e.g. "/rest/v1/energy_predictions"
+     */
+    public void logBodies(String pathPrefix) {
+        bodyPathPrefixes.add(pathPrefix);
+    }
+    
+    public void stopLoggingBodies(String pathPrefix) {
+        bodyPathPrefixes.remove(pathPrefix);
+    }
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        if (!enabled) {
+            return chain.proceed(chain.request());
+        }
+        String path = chain.request().url().encodedPath();
+        for (String prefix : bodyPathPrefixes) {
+            if (path.startsWith(prefix)) {
+                return body.intercept(chain);
+            }
+        }
+        return basic.intercept(chain);
+    }
+}
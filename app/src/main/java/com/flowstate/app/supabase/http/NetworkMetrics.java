@@ -0,0 +1,293 @@
+package com.flowstate.app.supabase.http;
+
+import android.util.Log;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records per-endpoint network metrics: call counts, a latency histogram, request and
+ * response bytes, status-code counts, failures and retries.
+ *
+ * Endpoints are keyed by method and path, e.g. {@code "GET /rest/v1/heart_rate_readings"}.
+ * Response bytes are counted as the body is consumed, so streamed bodies are never buffered.
+ * Latency is measured to the response headers.
+ */
+public class NetworkMetrics implements Interceptor {
+    
+    private static final String TAG = "NetworkMetrics";
+    
+    // Upper bounds of the latency buckets in ms; the last bucket is open-ended
+    private static final long[] LATENCY_BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000};
+    
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointStats stats = statsFor(request.method() + " " + request.url().encodedPath());
+        long requestBytes = request.body() != null ? request.body().contentLength() : 0;
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            stats.recordFailure((System.nanoTime() - start) / 1_000_000, Math.max(requestBytes, 0));
+            throw e;
+        }
+        int retries = 0;
+        for (Response prior = response.priorResponse(); prior != null; prior = prior.priorResponse()) {
+            retries++;
+        }
+        stats.recordResponse((System.nanoTime() - start) / 1_000_000, Math.max(requestBytes, 0),
+                response.code(), retries);
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        return response.newBuilder().body(new CountingBody(body, stats)).build();
+    }
+    
+    /**
+     * Record a retry made above the HTTP layer, e.g. by a retry policy re-issuing a call
+     */
+    public void recordRetry(String method, String path) {
+        statsFor(method + " " + path).recordRetries(1);
+    }
+    
+    /**
+     * Point-in-time copy of every endpoint's metrics, sorted by endpoint
+     */
+    public Map<String, Snapshot> getSnapshot() {
+        Map<String, Snapshot> snapshot = new TreeMap<>();
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+    
+    public void reset() {
+        endpoints.clear();
+    }
+    
+    /**
+     * Human-readable summary, one line per endpoint
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Snapshot> entry : getSnapshot().entrySet()) {
+            Snapshot s = entry.getValue();
+            out.append(entry.getKey())
+                    .append(" calls=").append(s.getCount())
+                    .append(" failures=").append(s.getFailures())
+                    .append(" retries=").append(s.getRetries())
+                    .append(" p50=").append(s.getLatencyPercentileMs(0.5)).append("ms")
+                    .append(" p95=").append(s.getLatencyPercentileMs(0.95)).append("ms")
+                    .append(" max=").append(s.getMaxLatencyMs()).append("ms")
+                    .append(" sent=").append(s.getRequestBytes()).append("B")
+                    .append(" received=").append(s.getResponseBytes()).append("B")
+                    .append(" status=").append(s.getStatusCounts())
+                    .append('\n');
+        }
+        return out.toString();
+    }
+    
+    public void logDump() {
+        for (String line : dump().split("\n")) {
+            if (!line.isEmpty()) {
+                Log.d(TAG, line);
+            }
+        }
+    }
+    
+    private EndpointStats statsFor(String endpoint) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+        }
+        return stats;
+    }
+    
+    private static class EndpointStats {
+        private final long[] latencyBuckets = new long[LATENCY_BUCKETS_MS.length + 1];
+        private final Map<Integer, Long> statusCounts = new TreeMap<>();
+        private long count;
+        private long failures;
+        private long retries;
+        private long requestBytes;
+        private long responseBytes;
+        private long maxLatencyMs;
+        
+        synchronized void recordResponse(long latencyMs, long sentBytes, int status, int retryCount) {
+            record(latencyMs, sentBytes);
+            Long previous = statusCounts.get(status);
+            statusCounts.put(status, previous != null ? previous + 1 : 1);
+            retries += retryCount;
+        }
+        
+        synchronized void recordFailure(long latencyMs, long sentBytes) {
+            record(latencyMs, sentBytes);
+            failures++;
+        }
+        
+        synchronized void recordRetries(int retryCount) {
+            retries += retryCount;
+        }
+        
+        synchronized void recordReceived(long bytes) {
+            responseBytes += bytes;
+        }
+        
+        private void record(long latencyMs, long sentBytes) {
+            count++;
+            requestBytes += sentBytes;
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MS.length && latencyMs > LATENCY_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            latencyBuckets[bucket]++;
+        }
+        
+        synchronized Snapshot snapshot() {
+            return new Snapshot(count, failures, retries, requestBytes, responseBytes, maxLatencyMs,
+                    latencyBuckets.clone(), new TreeMap<>(statusCounts));
+        }
+    }
+    
+    /**
+     * Metrics of one endpoint at the time {@link #getSnapshot()} was called
+     */
+    public static class Snapshot {
+        private final long count;
+        private final long failures;
+        private final long retries;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final long maxLatencyMs;
+        private final long[] latencyBuckets;
+        private final Map<Integer, Long> statusCounts;
+        
+        Snapshot(long count, long failures, long retries, long requestBytes, long responseBytes,
+                 long maxLatencyMs, long[] latencyBuckets, Map<Integer, Long> statusCounts) {
+            this.count = count;
+            this.failures = failures;
+            this.retries = retries;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.maxLatencyMs = maxLatencyMs;
+            this.latencyBuckets = latencyBuckets;
+            this.statusCounts = Collections.unmodifiableMap(statusCounts);
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        /**
+         * Calls that ended without a response, e.g. timeouts and connection errors
+         */
+        public long getFailures() {
+            return failures;
+        }
+        
+        public long getRetries() {
+            return retries;
+        }
+        
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+        
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+        
+        public long getMaxLatencyMs() {
+            return maxLatencyMs;
+        }
+        
+        public Map<Integer, Long> getStatusCounts() {
+            return statusCounts;
+        }
+        
+        /**
+         * Bucket upper bounds in ms, matching {@link #getLatencyHistogram()}; the final
+         * histogram bucket counts everything above the last bound
+         */
+        public static long[] getLatencyBucketBoundsMs() {
+            return LATENCY_BUCKETS_MS.clone();
+        }
+        
+        public long[] getLatencyHistogram() {
+            return latencyBuckets.clone();
+        }
+        
+        /**
+         * Upper bound of the bucket holding the given percentile (0-1), capped at the max seen
+         */
+        public long getLatencyPercentileMs(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= rank) {
+                    return i < LATENCY_BUCKETS_MS.length ? Math.min(LATENCY_BUCKETS_MS[i], maxLatencyMs) : maxLatencyMs;
+                }
+            }
+            return maxLatencyMs;
+        }
+    }
+    
+    /**
+     * Passes the body through unchanged, adding the bytes read to the endpoint's total
+     */
+    private static class CountingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        
+        CountingBody(ResponseBody delegate, EndpointStats stats) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        stats.recordReceived(read);
+                    }
+                    return read;
+                }
+            });
+        }
+        
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+        
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+        
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.flowstate.app.supabase.http;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache for PostgREST table reads.
+ *
+ * GET responses are stored by table, user and normalized query (parameters sorted, plus the
+ * Range, Accept and Prefer headers) and served until the table's TTL runs out. Entries are
+ * evicted least recently used first once the byte budget is exceeded. Any other request
+ * to a table (insert, upsert, update, delete) invalidates that table and any tables derived
+ * from it, so writes sent by the repositories or the outbox are seen by the next read.
+ * RPC calls and CSV exports are never cached; a call to a function registered with
+ * {@link #addFunctionWrites} invalidates the tables that function writes.
+ */
+public class QueryCache implements Interceptor {
+    
+    private static final String REST_PREFIX = "/rest/v1/";
+    private static final String RPC_PREFIX = REST_PREFIX + "rpc/";
+    
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long defaultTtlMs;
+    private final Map<String, Long> tableTtls = new ConcurrentHashMap<>();
+    // Tables maintained from another table's rows by the database, e.g. trigger rollups
+    private final Map<String, Set<String>> derivedTables = new ConcurrentHashMap<>();
+    // Tables written by Postgres functions, which a request path does not reveal
+    private final Map<String, Set<String>> functionWrites = new ConcurrentHashMap<>();
+    
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Bumped on every write to a table, so reads that started before it are not stored
+    private final Map<String, Long> generations = new HashMap<>();
+    // Bumped by clear(), covering every table at once
+    private long epoch;
+    private long currentBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public QueryCache(long maxBytes, long defaultTtlMs) {
+        this.maxBytes = maxBytes;
+        // A single response may use at most a quarter of the budget
+        this.maxEntryBytes = maxBytes / 4;
+        this.defaultTtlMs = defaultTtlMs;
+    }
+    
+    /**
+     * TTL for reads of {@code table}; 0 disables caching for it
+     */
+    public void setTtl(String table, long ttlMs) {
+        tableTtls.put(table, ttlMs);
+    }
+    
+    /**
+     * Writes to {@code table} also invalidate {@code derivedTable}
+     */
+    public void addDerivedTable(String table, String derivedTable) {
+        derivedTables.computeIfAbsent(table, key -> ConcurrentHashMap.newKeySet()).add(derivedTable);
+    }
+    
+    /**
+     * Calls to {@code function} invalidate {@code table} and the tables derived from it
+     */
+    public void addFunctionWrites(String function, String table) {
+        functionWrites.computeIfAbsent(function, key -> ConcurrentHashMap.newKeySet()).add(table);
+    }
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String table = tableOf(request.url());
+        if (table == null) {
+            Set<String> written = writesOf(request.url());
+            if (written == null) {
+                return chain.proceed(request);
+            }
+            try {
+                return chain.proceed(request);
+            } finally {
+                for (String writtenTable : written) {
+                    invalidate(writtenTable);
+                }
+            }
+        }
+        if (!"GET".equals(request.method())) {
+            try {
+                return chain.proceed(request);
+            } finally {
+                // Also on failure: a timed out write may still have been applied
+                invalidate(table);
+            }
+        }
+        
+        Long tableTtl = tableTtls.get(table);
+        long ttlMs = tableTtl != null ? tableTtl : defaultTtlMs;
+        // Exports read each page once, and peeking would buffer a body meant to be streamed
+        if (ttlMs <= 0 || isCsv(request)) {
+            return chain.proceed(request);
+        }
+        
+        String key = keyOf(table, request);
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.toResponse(request);
+            }
+            if (entry != null) {
+                remove(key);
+            }
+            generation = generationOf(table);
+        }
+        misses.incrementAndGet();
+        
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+        if (response.code() != 200 && response.code() != 206 || body == null) {
+            return response;
+        }
+        // Peek so responses too large to cache still stream without being buffered twice
+        ResponseBody peeked = response.peekBody(maxEntryBytes + 1);
+        if (peeked.contentLength() > maxEntryBytes) {
+            return response;
+        }
+        byte[] bytes = peeked.bytes();
+        Entry entry = new Entry(table, key, bytes, body.contentType(), response.code(), response.message(),
+                response.protocol(), response.headers(), System.currentTimeMillis() + ttlMs);
+        synchronized (this) {
+            if (generationOf(table) == generation) {
+                put(entry);
+            }
+        }
+        return response;
+    }
+    
+    /**
+     * Drop every cached read of {@code table} and the tables derived from it
+     */
+    public synchronized void invalidate(String table) {
+        invalidateTable(table);
+        Set<String> derived = derivedTables.get(table);
+        if (derived != null) {
+            for (String derivedTable : derived) {
+                invalidateTable(derivedTable);
+            }
+        }
+    }
+    
+    private void invalidateTable(String table) {
+        Long generation = generations.get(table);
+        generations.put(table, generation != null ? generation + 1 : 1);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.table.equals(table)) {
+                currentBytes -= entry.size;
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Drop everything, e.g. when the signed-in user changes
+     */
+    public synchronized void clear() {
+        epoch++;
+        entries.clear();
+        currentBytes = 0;
+    }
+    
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+    
+    private void put(Entry entry) {
+        Entry previous = entries.put(entry.key, entry);
+        if (previous != null) {
+            currentBytes -= previous.size;
+        }
+        currentBytes += entry.size;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            currentBytes -= eldest.size;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+    
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            currentBytes -= entry.size;
+        }
+    }
+    
+    // Both counters only grow, so their sum changes whenever either does
+    private long generationOf(String table) {
+        Long generation = generations.get(table);
+        return epoch + (generation != null ? generation : 0);
+    }
+    
+    /**
+     * Table a request addresses, or null for anything that is not a plain table request
+     */
+    private static String tableOf(HttpUrl url) {
+        String path = url.encodedPath();
+        if (!path.startsWith(REST_PREFIX)) {
+            return null;
+        }
+        String table = path.substring(REST_PREFIX.length());
+        if (table.isEmpty() || table.indexOf('/') >= 0) {
+            // rpc/<function> and anything nested
+            return null;
+        }
+        return table;
+    }
+    
+    /**
+     * Tables written by the function a request calls, or null if it calls none registered
+     */
+    private Set<String> writesOf(HttpUrl url) {
+        String path = url.encodedPath();
+        if (!path.startsWith(RPC_PREFIX)) {
+            return null;
+        }
+        return functionWrites.get(path.substring(RPC_PREFIX.length()));
+    }
+    
+    private static boolean isCsv(Request request) {
+        String accept = request.header("Accept");
+        return accept != null && accept.startsWith("text/csv");
+    }
+    
+    private static String keyOf(String table, Request request) {
+        HttpUrl url = request.url();
+        String user = url.queryParameter("user_id");
+        StringBuilder key = new StringBuilder(table).append('|')
+                .append(user != null ? user : request.header("Authorization")).append('|');
+        List<String> names = new ArrayList<>(url.queryParameterNames());
+        Collections.sort(names);
+        for (String name : names) {
+            for (String value : url.queryParameterValues(name)) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        }
+        key.append('|').append(request.header("Range"))
+                .append('|').append(request.header("Accept"))
+                .append('|').append(request.header("Prefer"));
+        return key.toString();
+    }
+    
+    private static class Entry {
+        final String table;
+        final String key;
+        final byte[] body;
+        final MediaType contentType;
+        final int code;
+        final String message;
+        final Protocol protocol;
+        final Headers headers;
+        final long expiresAt;
+        final long size;
+        
+        Entry(String table, String key, byte[] body, MediaType contentType, int code, String message,
+              Protocol protocol, Headers headers, long expiresAt) {
+            this.table = table;
+            this.key = key;
+            this.body = body;
+            this.contentType = contentType;
+            this.code = code;
+            this.message = message;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.expiresAt = expiresAt;
+            // Body plus a rough allowance for the key and headers
+            this.size = body.length + 2L * key.length() + headers.byteCount();
+        }
+        
+        Response toResponse(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(code)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(body, contentType))
+                    .build();
+        }
+    }
+}
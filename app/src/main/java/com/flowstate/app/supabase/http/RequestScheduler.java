@@ -0,0 +1,234 @@
+package com.flowstate.app.supabase.http;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Admits requests to the network by priority class, so bulk uploads and syncs cannot
+ * hold up the reads a screen is waiting on.
+ *
+ * Each class has its own concurrency limit and FIFO queue. Queued background requests
+ * yield to any queued foreground request, even when background capacity is free.
+ * Reads and RPC calls are foreground and writes are background unless the request
+ * carries a {@link #PRIORITY_HEADER}, which is removed before sending. Auth requests are
+ * never queued, since a token refresh can be what queued requests are waiting on.
+ *
+ * A request holds its slot until its response headers arrive.
+ */
+public class RequestScheduler implements Interceptor {
+    
+    public static final String PRIORITY_HEADER = "X-Request-Priority";
+    
+    // How often a waiting request checks whether its call was cancelled
+    private static final long CANCEL_CHECK_MS = 250;
+    
+    public enum Priority {
+        FOREGROUND,
+        BACKGROUND
+    }
+    
+    private final Map<Priority, ClassState> classes = new EnumMap<>(Priority.class);
+    
+    public RequestScheduler(int foregroundLimit, int backgroundLimit) {
+        classes.put(Priority.FOREGROUND, new ClassState(foregroundLimit));
+        classes.put(Priority.BACKGROUND, new ClassState(backgroundLimit));
+    }
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String requested = request.header(PRIORITY_HEADER);
+        if (requested != null) {
+            request = request.newBuilder().removeHeader(PRIORITY_HEADER).build();
+        }
+        if (request.url().encodedPath().startsWith("/auth/v1/")) {
+            return chain.proceed(request);
+        }
+        
+        Priority priority = priorityOf(request, requested);
+        acquire(priority, chain.call());
+        try {
+            return chain.proceed(request);
+        } finally {
+            release(priority);
+        }
+    }
+    
+    /**
+     * Point-in-time copy of each class's queue metrics
+     */
+    public synchronized Map<Priority, Snapshot> getSnapshot() {
+        Map<Priority, Snapshot> snapshot = new EnumMap<>(Priority.class);
+        for (Map.Entry<Priority, ClassState> entry : classes.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+    
+    private static Priority priorityOf(Request request, String requested) {
+        if (requested != null) {
+            try {
+                return Priority.valueOf(requested.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                // A misspelled class must not fail the request; treat it as interactive
+                return Priority.FOREGROUND;
+            }
+        }
+        if ("GET".equals(request.method()) || request.url().encodedPath().startsWith("/rest/v1/rpc/")) {
+            return Priority.FOREGROUND;
+        }
+        return Priority.BACKGROUND;
+    }
+    
+    private synchronized void acquire(Priority priority, Call call) throws IOException {
+        ClassState state = classes.get(priority);
+        Ticket ticket = new Ticket();
+        state.queue.addLast(ticket);
+        boolean admitted = false;
+        try {
+            while (!canStart(priority, ticket)) {
+                if (call.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                wait(CANCEL_CHECK_MS);
+            }
+            admitted = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queued");
+        } finally {
+            state.queue.remove(ticket);
+            if (admitted) {
+                state.running++;
+                state.recordStart(System.nanoTime() - ticket.queuedAt);
+            } else {
+                // The next request in line may now be able to start
+                notifyAll();
+            }
+        }
+    }
+    
+    private synchronized void release(Priority priority) {
+        classes.get(priority).running--;
+        notifyAll();
+    }
+    
+    private boolean canStart(Priority priority, Ticket ticket) {
+        ClassState state = classes.get(priority);
+        if (state.queue.peekFirst() != ticket || state.running >= state.limit) {
+            return false;
+        }
+        if (priority == Priority.BACKGROUND && !classes.get(Priority.FOREGROUND).queue.isEmpty()) {
+            if (!ticket.deferred) {
+                ticket.deferred = true;
+                state.deferred++;
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    private static class Ticket {
+        final long queuedAt = System.nanoTime();
+        boolean deferred;
+    }
+    
+    // Guarded by the scheduler's lock
+    private static class ClassState {
+        final int limit;
+        final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        int running;
+        long started;
+        long deferred;
+        long totalWaitNanos;
+        long maxWaitNanos;
+        
+        ClassState(int limit) {
+            this.limit = limit;
+        }
+        
+        void recordStart(long waitNanos) {
+            started++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+        
+        Snapshot snapshot() {
+            return new Snapshot(limit, queue.size(), running, started, deferred,
+                    started > 0 ? totalWaitNanos / started / 1_000_000 : 0, maxWaitNanos / 1_000_000);
+        }
+    }
+    
+    /**
+     * Queue metrics of one priority class
+     */
+    public static class Snapshot {
+        private final int limit;
+        private final int queued;
+        private final int running;
+        private final long started;
+        private final long deferred;
+        private final long averageWaitMs;
+        private final long maxWaitMs;
+        
+        Snapshot(int limit, int queued, int running, long started, long deferred, long averageWaitMs, long maxWaitMs) {
+            this.limit = limit;
+            this.queued = queued;
+            this.running = running;
+            this.started = started;
+            this.deferred = deferred;
+            this.averageWaitMs = averageWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+        
+        public int getLimit() {
+            return limit;
+        }
+        
+        /**
+         * Requests currently waiting for a slot
+         */
+        public int getQueued() {
+            return queued;
+        }
+        
+        public int getRunning() {
+            return running;
+        }
+        
+        public long getStarted() {
+            return started;
+        }
+        
+        /**
+         * Requests that had to wait behind queued foreground requests (background only)
+         */
+        public long getDeferred() {
+            return deferred;
+        }
+        
+        public long getAverageWaitMs() {
+            return averageWaitMs;
+        }
+        
+        public long getMaxWaitMs() {
+            return maxWaitMs;
+        }
+        
+        @Override
+        public String toString() {
+            return "queued=" + queued + " running=" + running + "/" + limit + " started=" + started
+                    + " deferred=" + deferred + " wait avg=" + averageWaitMs + "ms max=" + maxWaitMs + "ms";
+        }
+    }
+}
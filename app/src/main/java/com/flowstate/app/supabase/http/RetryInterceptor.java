@@ -0,0 +1,168 @@
+package com.flowstate.app.supabase.http;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries failed PostgREST requests with capped exponential backoff and full jitter,
+ * behind a {@link CircuitBreaker}.
+ *
+ * Network errors and 500/502/503/504 responses are retried only for idempotent requests:
+ * GET, HEAD, PUT, DELETE and upserts (a Prefer resolution). 429 responses are retried for
+ * any request, since the server rejected them before doing anything. A Retry-After header
+ * replaces the computed delay; if it asks for longer than {@link #MAX_RETRY_AFTER_MS} the
+ * response is returned as is. Retries are recorded in {@link NetworkMetrics}.
+ */
+public class RetryInterceptor implements Interceptor {
+    
+    private static final String REST_PREFIX = "/rest/v1/";
+    
+    private static final int MAX_RETRIES = 3;
+    private static final long BASE_DELAY_MS = 250;
+    private static final long MAX_DELAY_MS = 8_000;
+    private static final long MAX_RETRY_AFTER_MS = 30_000;
+    // How often a backing-off request checks whether its call was cancelled
+    private static final long CANCEL_CHECK_MS = 250;
+    
+    private final CircuitBreaker breaker;
+    private final NetworkMetrics metrics;
+    private final AtomicLong retries = new AtomicLong();
+    
+    public RetryInterceptor(CircuitBreaker breaker, NetworkMetrics metrics) {
+        this.breaker = breaker;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!request.url().encodedPath().startsWith(REST_PREFIX)) {
+            return chain.proceed(request);
+        }
+        boolean idempotent = isIdempotent(request);
+        
+        for (int attempt = 0; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitOpenException(breaker.getRemainingOpenMillis());
+            }
+            
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    breaker.onAbandoned();
+                    throw e;
+                }
+                breaker.onFailure();
+                if (!idempotent || attempt >= MAX_RETRIES || breaker.getState() == CircuitBreaker.State.OPEN) {
+                    throw e;
+                }
+                backOff(chain.call(), backoffDelay(attempt));
+                recordRetry(request);
+                continue;
+            } catch (RuntimeException e) {
+                breaker.onAbandoned();
+                throw e;
+            }
+            
+            int code = response.code();
+            if (code == 429 || code >= 500) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+                return response;
+            }
+            boolean retryable = code == 429 || (idempotent && (code == 500 || code == 502 || code == 503 || code == 504));
+            // Once the circuit has opened the caller gets the real failure rather than a fast-fail
+            if (!retryable || attempt >= MAX_RETRIES || breaker.getState() == CircuitBreaker.State.OPEN) {
+                return response;
+            }
+            long delay = retryAfterMillis(response);
+            if (delay > MAX_RETRY_AFTER_MS) {
+                return response;
+            }
+            response.close();
+            backOff(chain.call(), delay >= 0 ? delay : backoffDelay(attempt));
+            recordRetry(request);
+        }
+    }
+    
+    /**
+     * Requests re-sent after a failure since startup
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+    
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+    
+    private void recordRetry(Request request) {
+        retries.incrementAndGet();
+        metrics.recordRetry(request.method(), request.url().encodedPath());
+    }
+    
+    private static boolean isIdempotent(Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+                return true;
+            case "POST":
+                String prefer = request.header("Prefer");
+                return prefer != null && prefer.contains("resolution=");
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Full jitter: uniformly random up to the capped exponential delay
+     */
+    private static long backoffDelay(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+    
+    /**
+     * Delay requested by a Retry-After header (seconds or an HTTP date), or -1 if there is none
+     */
+    private static long retryAfterMillis(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+    
+    private static void backOff(Call call, long delayMs) throws IOException {
+        long deadline = System.currentTimeMillis() + delayMs;
+        try {
+            for (long remaining = delayMs; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+                if (call.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                Thread.sleep(Math.min(remaining, CANCEL_CHECK_MS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+}
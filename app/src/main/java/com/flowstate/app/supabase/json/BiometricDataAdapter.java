@@ -0,0 +1,112 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.BiometricData;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading biometric rows straight into {@link BiometricData}.
+ *
+ * Understands the columns of heart_rate_readings, sleep_sessions and temperature_readings,
+ * so any of those tables can be decoded without an intermediate map.
+ * Returns null for rows whose timestamp cannot be parsed.
+ */
+public class BiometricDataAdapter extends TypeAdapter<BiometricData> {
+    
+    @Override
+    public BiometricData read(JsonReader in) throws IOException {
+        return read(in, null);
+    }
+    
+    /**
+     * Reads a row, recording its id and raw time values in {@code key} when it is not null
+     */
+    public BiometricData read(JsonReader in, RowKey key) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date timestamp = null;
+        Integer heartRate = null;
+        Integer sleepMinutes = null;
+        Double sleepQuality = null;
+        Double skinTemperature = null;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "timestamp":
+                case "sleep_start":
+                    String time = JsonFields.nextStringOrNull(in);
+                    if (key != null) {
+                        key.setTime(time);
+                    }
+                    timestamp = JsonFields.parseTimestamp(time);
+                    break;
+                case "heart_rate_bpm":
+                    heartRate = JsonFields.nextIntOrNull(in);
+                    break;
+                case "duration_minutes":
+                    sleepMinutes = JsonFields.nextIntOrNull(in);
+                    break;
+                case "sleep_quality_score":
+                    sleepQuality = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "temperature_celsius":
+                    skinTemperature = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "id":
+                    if (key != null) {
+                        key.setId(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                case "created_at":
+                    if (key != null) {
+                        key.setCreatedAt(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (timestamp == null) {
+            return null;
+        }
+        return new BiometricData(timestamp, heartRate, sleepMinutes, sleepQuality, skinTemperature);
+    }
+    
+    @Override
+    public void write(JsonWriter out, BiometricData value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("timestamp").value(JsonFields.formatTimestamp(value.getTimestamp()));
+        if (value.getHeartRate() != null) {
+            out.name("heart_rate_bpm").value(value.getHeartRate());
+        }
+        if (value.getSleepMinutes() != null) {
+            out.name("duration_minutes").value(value.getSleepMinutes());
+        }
+        if (value.getSleepQuality() != null) {
+            out.name("sleep_quality_score").value(value.getSleepQuality());
+        }
+        if (value.getSkinTemperature() != null) {
+            out.name("temperature_celsius").value(value.getSkinTemperature());
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,92 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.CognitiveRollup;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading cognitive_daily rows into {@link CognitiveRollup}.
+ * Returns null for rows whose date cannot be parsed.
+ */
+public class CognitiveRollupAdapter extends TypeAdapter<CognitiveRollup> {
+    
+    @Override
+    public CognitiveRollup read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date date = null;
+        int typingTestCount = 0;
+        Double wordsPerMinuteMean = null;
+        Double accuracyMean = null;
+        int reactionTestCount = 0;
+        Double reactionTimeMean = null;
+        Integer reactionTimeMin = null;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "bucket_date":
+                    date = JsonFields.parseTimestamp(JsonFields.nextStringOrNull(in));
+                    break;
+                case "typing_test_count":
+                    typingTestCount = in.nextInt();
+                    break;
+                case "words_per_minute_mean":
+                    wordsPerMinuteMean = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "accuracy_mean":
+                    accuracyMean = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "reaction_test_count":
+                    reactionTestCount = in.nextInt();
+                    break;
+                case "reaction_time_mean":
+                    reactionTimeMean = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "reaction_time_min":
+                    reactionTimeMin = JsonFields.nextIntOrNull(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (date == null) {
+            return null;
+        }
+        CognitiveRollup rollup = new CognitiveRollup(date);
+        rollup.setTypingTestCount(typingTestCount);
+        rollup.setWordsPerMinuteMean(wordsPerMinuteMean);
+        rollup.setAccuracyMean(accuracyMean);
+        rollup.setReactionTestCount(reactionTestCount);
+        rollup.setReactionTimeMean(reactionTimeMean);
+        rollup.setReactionTimeMin(reactionTimeMin);
+        return rollup;
+    }
+    
+    @Override
+    public void write(JsonWriter out, CognitiveRollup value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("bucket_date").value(JsonFields.formatTimestamp(value.getDate()));
+        out.name("typing_test_count").value(value.getTypingTestCount());
+        out.name("words_per_minute_mean").value(value.getWordsPerMinuteMean());
+        out.name("accuracy_mean").value(value.getAccuracyMean());
+        out.name("reaction_test_count").value(value.getReactionTestCount());
+        out.name("reaction_time_mean").value(value.getReactionTimeMean());
+        out.name("reaction_time_min").value(value.getReactionTimeMin());
+        out.endObject();
+    }
+}
@@ -0,0 +1,45 @@
+package com.flowstate.app.supabase.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads the deleted_rows count from the rows returned by retention RPCs such as
+ * compact_my_raw_biometrics, one row per compacted table
+ */
+public class DeletedRowsAdapter extends TypeAdapter<Integer> {
+    
+    @Override
+    public Integer read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer deletedRows = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("deleted_rows".equals(in.nextName())) {
+                deletedRows = JsonFields.nextIntOrNull(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return deletedRows;
+    }
+    
+    @Override
+    public void write(JsonWriter out, Integer value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("deleted_rows").value(value);
+        out.endObject();
+    }
+}
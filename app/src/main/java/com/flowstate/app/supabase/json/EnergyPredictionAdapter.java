@@ -0,0 +1,184 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.EnergyLevel;
+import com.flowstate.app.data.models.EnergyPrediction;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming adapter reading energy_predictions rows straight into {@link EnergyPrediction}.
+ * Factor objects are read once directly into the maps held by the prediction, either from
+ * the biometric_factors and cognitive_factors objects of a locally stored row or from the
+ * embedded energy_prediction_factors rows of a server response.
+ * Returns null for rows whose timestamp or level cannot be parsed.
+ */
+public class EnergyPredictionAdapter extends TypeAdapter<EnergyPrediction> {
+    
+    @Override
+    public EnergyPrediction read(JsonReader in) throws IOException {
+        return read(in, null);
+    }
+    
+    /**
+     * Reads a row, recording its id and raw time values in {@code key} when it is not null
+     */
+    public EnergyPrediction read(JsonReader in, RowKey key) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date timestamp = null;
+        EnergyLevel level = null;
+        double confidence = 0.0;
+        Map<String, Double> biometricFactors = null;
+        Map<String, Double> cognitiveFactors = null;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "prediction_time":
+                    String time = JsonFields.nextStringOrNull(in);
+                    if (key != null) {
+                        key.setTime(time);
+                    }
+                    timestamp = JsonFields.parseTimestamp(time);
+                    break;
+                case "predicted_level":
+                    level = parseLevel(JsonFields.nextStringOrNull(in));
+                    break;
+                case "confidence_score":
+                    confidence = in.nextDouble();
+                    break;
+                case "biometric_factors":
+                    biometricFactors = JsonFields.nextDoubleMapOrNull(in);
+                    break;
+                case "cognitive_factors":
+                    cognitiveFactors = JsonFields.nextDoubleMapOrNull(in);
+                    break;
+                case "energy_prediction_factors":
+                    if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                        in.skipValue();
+                        break;
+                    }
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Factor factor = readFactor(in);
+                        if (factor == null) {
+                            continue;
+                        }
+                        if ("biometric".equals(factor.type)) {
+                            if (biometricFactors == null) {
+                                biometricFactors = new HashMap<>();
+                            }
+                            biometricFactors.put(factor.name, factor.value);
+                        } else if ("cognitive".equals(factor.type)) {
+                            if (cognitiveFactors == null) {
+                                cognitiveFactors = new HashMap<>();
+                            }
+                            cognitiveFactors.put(factor.name, factor.value);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                case "id":
+                    if (key != null) {
+                        key.setId(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                case "created_at":
+                    if (key != null) {
+                        key.setCreatedAt(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (timestamp == null || level == null) {
+            return null;
+        }
+        return new EnergyPrediction(timestamp, level, confidence, biometricFactors, cognitiveFactors);
+    }
+    
+    @Override
+    public void write(JsonWriter out, EnergyPrediction value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("prediction_time").value(JsonFields.formatTimestamp(value.getTimestamp()));
+        out.name("predicted_level").value(value.getPredictedLevel().name());
+        out.name("confidence_score").value(value.getConfidence());
+        if (value.getBiometricFactors() != null) {
+            out.name("biometric_factors");
+            JsonFields.writeDoubleMap(out, value.getBiometricFactors());
+        }
+        if (value.getCognitiveFactors() != null) {
+            out.name("cognitive_factors");
+            JsonFields.writeDoubleMap(out, value.getCognitiveFactors());
+        }
+        out.endObject();
+    }
+    
+    /**
+     * Reads one embedded energy_prediction_factors row, returning null if it is incomplete
+     */
+    private static Factor readFactor(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        Factor factor = new Factor();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "factor_type":
+                    factor.type = JsonFields.nextStringOrNull(in);
+                    break;
+                case "factor_name":
+                    factor.name = JsonFields.nextStringOrNull(in);
+                    break;
+                case "factor_value":
+                    factor.value = JsonFields.nextDoubleOrNull(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return factor.name != null && factor.value != null ? factor : null;
+    }
+    
+    private static EnergyLevel parseLevel(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return EnergyLevel.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static class Factor {
+        String type;
+        String name;
+        Double value;
+    }
+}
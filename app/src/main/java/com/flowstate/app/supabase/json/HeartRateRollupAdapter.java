@@ -0,0 +1,77 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.HeartRateRollup;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading heart_rate_hourly and heart_rate_daily rows into {@link HeartRateRollup}.
+ * The bucket is read from bucket_start (hourly) or bucket_date (daily); rows without one
+ * are returned as null.
+ */
+public class HeartRateRollupAdapter extends TypeAdapter<HeartRateRollup> {
+    
+    @Override
+    public HeartRateRollup read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date bucketStart = null;
+        int readingCount = 0;
+        double mean = 0;
+        int min = 0;
+        int max = 0;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "bucket_start":
+                case "bucket_date":
+                    bucketStart = JsonFields.parseTimestamp(JsonFields.nextStringOrNull(in));
+                    break;
+                case "reading_count":
+                    readingCount = in.nextInt();
+                    break;
+                case "heart_rate_mean":
+                    mean = in.nextDouble();
+                    break;
+                case "heart_rate_min":
+                    min = in.nextInt();
+                    break;
+                case "heart_rate_max":
+                    max = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (bucketStart == null) {
+            return null;
+        }
+        return new HeartRateRollup(bucketStart, readingCount, mean, min, max);
+    }
+    
+    @Override
+    public void write(JsonWriter out, HeartRateRollup value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("bucket_start").value(JsonFields.formatTimestamp(value.getBucketStart()));
+        out.name("reading_count").value(value.getReadingCount());
+        out.name("heart_rate_mean").value(value.getMean());
+        out.name("heart_rate_min").value(value.getMin());
+        out.name("heart_rate_max").value(value.getMax());
+        out.endObject();
+    }
+}
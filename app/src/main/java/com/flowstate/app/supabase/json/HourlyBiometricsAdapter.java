@@ -0,0 +1,104 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.HourlyBiometrics;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading hourly_biometrics RPC rows straight into {@link HourlyBiometrics}.
+ * Returns null for rows whose bucket start cannot be parsed.
+ */
+public class HourlyBiometricsAdapter extends TypeAdapter<HourlyBiometrics> {
+    
+    @Override
+    public HourlyBiometrics read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date bucketStart = null;
+        int heartRateCount = 0;
+        Double heartRateMean = null;
+        Integer heartRateMin = null;
+        Integer heartRateMax = null;
+        int sleepQualityCount = 0;
+        Double sleepQualityMean = null;
+        Double sleepQualityMin = null;
+        Double sleepQualityMax = null;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "bucket_start":
+                    bucketStart = JsonFields.parseTimestamp(JsonFields.nextStringOrNull(in));
+                    break;
+                case "heart_rate_count":
+                    heartRateCount = in.nextInt();
+                    break;
+                case "heart_rate_mean":
+                    heartRateMean = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "heart_rate_min":
+                    heartRateMin = JsonFields.nextIntOrNull(in);
+                    break;
+                case "heart_rate_max":
+                    heartRateMax = JsonFields.nextIntOrNull(in);
+                    break;
+                case "sleep_quality_count":
+                    sleepQualityCount = in.nextInt();
+                    break;
+                case "sleep_quality_mean":
+                    sleepQualityMean = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "sleep_quality_min":
+                    sleepQualityMin = JsonFields.nextDoubleOrNull(in);
+                    break;
+                case "sleep_quality_max":
+                    sleepQualityMax = JsonFields.nextDoubleOrNull(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (bucketStart == null) {
+            return null;
+        }
+        HourlyBiometrics hour = new HourlyBiometrics(bucketStart);
+        hour.setHeartRateCount(heartRateCount);
+        hour.setHeartRateMean(heartRateMean);
+        hour.setHeartRateMin(heartRateMin);
+        hour.setHeartRateMax(heartRateMax);
+        hour.setSleepQualityCount(sleepQualityCount);
+        hour.setSleepQualityMean(sleepQualityMean);
+        hour.setSleepQualityMin(sleepQualityMin);
+        hour.setSleepQualityMax(sleepQualityMax);
+        return hour;
+    }
+    
+    @Override
+    public void write(JsonWriter out, HourlyBiometrics value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("bucket_start").value(JsonFields.formatTimestamp(value.getBucketStart()));
+        out.name("heart_rate_count").value(value.getHeartRateCount());
+        out.name("heart_rate_mean").value(value.getHeartRateMean());
+        out.name("heart_rate_min").value(value.getHeartRateMin());
+        out.name("heart_rate_max").value(value.getHeartRateMax());
+        out.name("sleep_quality_count").value(value.getSleepQualityCount());
+        out.name("sleep_quality_mean").value(value.getSleepQualityMean());
+        out.name("sleep_quality_min").value(value.getSleepQualityMin());
+        out.name("sleep_quality_max").value(value.getSleepQualityMax());
+        out.endObject();
+    }
+}
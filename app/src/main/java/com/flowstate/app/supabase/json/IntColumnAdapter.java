@@ -0,0 +1,51 @@
+package com.flowstate.app.supabase.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads a single integer column from each row, e.g. a setting selected on its own.
+ * Returns null for rows where the column is missing or NULL.
+ */
+public class IntColumnAdapter extends TypeAdapter<Integer> {
+    
+    private final String column;
+    
+    public IntColumnAdapter(String column) {
+        this.column = column;
+    }
+    
+    @Override
+    public Integer read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer value = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (column.equals(in.nextName())) {
+                value = JsonFields.nextIntOrNull(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return value;
+    }
+    
+    @Override
+    public void write(JsonWriter out, Integer value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(column).value(value);
+        out.endObject();
+    }
+}
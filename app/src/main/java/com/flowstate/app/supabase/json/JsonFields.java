@@ -0,0 +1,92 @@
+package com.flowstate.app.supabase.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers shared by the streaming row adapters
+ */
+final class JsonFields {
+    
+    
+    private JsonFields() {
+    }
+    
+    static Integer nextIntOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+    
+    static Double nextDoubleOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextDouble();
+    }
+    
+    static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+    
+    /**
+     * Reads a flat JSON object of numbers, skipping non-numeric values
+     */
+    static Map<String, Double> nextDoubleMapOrNull(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return null;
+        }
+        Map<String, Double> map = new HashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NUMBER) {
+                map.put(name, in.nextDouble());
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return map;
+    }
+    
+    static void writeDoubleMap(JsonWriter out, Map<String, Double> map) throws IOException {
+        out.beginObject();
+        for (Map.Entry<String, Double> entry : map.entrySet()) {
+            out.name(entry.getKey()).value(entry.getValue());
+        }
+        out.endObject();
+    }
+    
+    /**
+     * Parses a timestamp column, returning null if it cannot be read
+     */
+    static Date parseTimestamp(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return TimestampCodec.parseDate(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    static String formatTimestamp(Date value) {
+        return TimestampCodec.format(value);
+    }
+}
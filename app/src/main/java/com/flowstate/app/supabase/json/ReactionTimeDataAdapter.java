@@ -0,0 +1,85 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.ReactionTimeData;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading reaction_time_tests rows straight into {@link ReactionTimeData}.
+ * Returns null for rows whose timestamp cannot be parsed.
+ */
+public class ReactionTimeDataAdapter extends TypeAdapter<ReactionTimeData> {
+    
+    @Override
+    public ReactionTimeData read(JsonReader in) throws IOException {
+        return read(in, null);
+    }
+    
+    /**
+     * Reads a row, recording its id and raw time values in {@code key} when it is not null
+     */
+    public ReactionTimeData read(JsonReader in, RowKey key) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date timestamp = null;
+        int reactionTimeMs = 0;
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "timestamp":
+                    String time = JsonFields.nextStringOrNull(in);
+                    if (key != null) {
+                        key.setTime(time);
+                    }
+                    timestamp = JsonFields.parseTimestamp(time);
+                    break;
+                case "reaction_time_ms":
+                    reactionTimeMs = in.nextInt();
+                    break;
+                case "id":
+                    if (key != null) {
+                        key.setId(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                case "created_at":
+                    if (key != null) {
+                        key.setCreatedAt(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (timestamp == null) {
+            return null;
+        }
+        return new ReactionTimeData(timestamp, reactionTimeMs);
+    }
+    
+    @Override
+    public void write(JsonWriter out, ReactionTimeData value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("timestamp").value(JsonFields.formatTimestamp(value.getTimestamp()));
+        out.name("reaction_time_ms").value(value.getReactionTimeMs());
+        out.endObject();
+    }
+}
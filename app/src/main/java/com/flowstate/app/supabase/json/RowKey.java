@@ -0,0 +1,50 @@
+package com.flowstate.app.supabase.json;
+
+/**
+ * Keyset position of the last row read by an adapter: the row id and the raw,
+ * unparsed values of its time and created_at columns.
+ *
+ * Raw values are kept because Postgres stores microseconds while models only
+ * carry millis, and a truncated value would not resume exactly after the row.
+ */
+public final class RowKey {
+    
+    private String id;
+    private String time;
+    private String createdAt;
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getTime() {
+        return time;
+    }
+    
+    public String getCreatedAt() {
+        return createdAt;
+    }
+    
+    /**
+     * Snapshot of the current position, for callers keeping the key of every row
+     */
+    public RowKey copy() {
+        RowKey key = new RowKey();
+        key.id = id;
+        key.time = time;
+        key.createdAt = createdAt;
+        return key;
+    }
+    
+    void setId(String id) {
+        this.id = id;
+    }
+    
+    void setTime(String time) {
+        this.time = time;
+    }
+    
+    void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
+}
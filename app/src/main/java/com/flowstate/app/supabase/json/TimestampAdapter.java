@@ -0,0 +1,39 @@
+package com.flowstate.app.supabase.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Gson adapter for {@link Date} backed by {@link TimestampCodec}
+ */
+public class TimestampAdapter extends TypeAdapter<Date> {
+    
+    @Override
+    public Date read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String value = in.nextString();
+        try {
+            return TimestampCodec.parseDate(value);
+        } catch (IllegalArgumentException e) {
+            throw new JsonSyntaxException(e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(TimestampCodec.format(value));
+    }
+}
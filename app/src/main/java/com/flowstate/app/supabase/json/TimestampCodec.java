@@ -0,0 +1,224 @@
+package com.flowstate.app.supabase.json;
+
+import java.util.Date;
+
+/**
+ * Thread-safe ISO-8601 timestamp codec for the data layer.
+ *
+ * Formats epoch millis as {@code yyyy-MM-dd'T'HH:mm:ss.SSS'Z'} (UTC) and parses every
+ * form PostgREST returns for DATE, TIMESTAMP and TIMESTAMPTZ columns:
+ * {@code 'T'} or space separator, optional seconds, 0-9 fractional digits and a
+ * {@code Z}, {@code +HH}, {@code +HHMM} or {@code +HH:MM} offset (no offset means UTC).
+ * Works on primitives only; no locks and no allocation beyond the returned String.
+ */
+public final class TimestampCodec {
+    
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int FORMATTED_LENGTH = 24;
+    
+    private static final ThreadLocal<char[]> buffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[FORMATTED_LENGTH];
+        }
+    };
+    
+    private TimestampCodec() {
+    }
+    
+    public static String format(Date date) {
+        return format(date.getTime());
+    }
+    
+    public static String format(long epochMillis) {
+        char[] chars = buffer.get();
+        write(epochMillis, chars);
+        return new String(chars, 0, FORMATTED_LENGTH);
+    }
+    
+    /**
+     * Appends the formatted timestamp without creating an intermediate String
+     */
+    public static void formatTo(long epochMillis, StringBuilder out) {
+        char[] chars = buffer.get();
+        write(epochMillis, chars);
+        out.append(chars, 0, FORMATTED_LENGTH);
+    }
+    
+    public static Date parseDate(CharSequence value) {
+        return new Date(parse(value));
+    }
+    
+    /**
+     * Parses a timestamp to epoch millis
+     *
+     * @throws IllegalArgumentException if the value is not a supported ISO-8601 form
+     */
+    public static long parse(CharSequence value) {
+        int length = value.length();
+        if (length < 10) {
+            throw invalid(value);
+        }
+        int year = digits(value, 0, 4);
+        expect(value, 4, '-');
+        int month = digits(value, 5, 2);
+        expect(value, 7, '-');
+        int day = digits(value, 8, 2);
+        
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        int pos = 10;
+        if (pos < length && isTimeSeparator(value.charAt(pos))) {
+            hour = digits(value, pos + 1, 2);
+            expect(value, pos + 3, ':');
+            minute = digits(value, pos + 4, 2);
+            pos += 6;
+            if (pos < length && value.charAt(pos) == ':') {
+                second = digits(value, pos + 1, 2);
+                pos += 3;
+                if (pos < length && (value.charAt(pos) == '.' || value.charAt(pos) == ',')) {
+                    pos++;
+                    int fractionDigits = 0;
+                    while (pos < length && isDigit(value.charAt(pos))) {
+                        // Postgres emits microseconds; anything past millis is truncated
+                        if (fractionDigits < 3) {
+                            millis = millis * 10 + (value.charAt(pos) - '0');
+                        }
+                        fractionDigits++;
+                        pos++;
+                    }
+                    if (fractionDigits == 0) {
+                        throw invalid(value);
+                    }
+                    for (int i = fractionDigits; i < 3; i++) {
+                        millis *= 10;
+                    }
+                }
+            }
+        }
+        
+        int offsetSeconds = 0;
+        if (pos < length) {
+            char c = value.charAt(pos);
+            if (c == 'Z' || c == 'z') {
+                pos++;
+            } else if (c == '+' || c == '-') {
+                int sign = c == '-' ? -1 : 1;
+                int offsetHours = digits(value, pos + 1, 2);
+                int offsetMinutes = 0;
+                int offsetSecs = 0;
+                pos += 3;
+                if (pos < length) {
+                    if (value.charAt(pos) == ':') {
+                        pos++;
+                    }
+                    offsetMinutes = digits(value, pos, 2);
+                    pos += 2;
+                    // Historic zones can carry second-level offsets, e.g. +00:53:28
+                    if (pos < length && value.charAt(pos) == ':') {
+                        offsetSecs = digits(value, pos + 1, 2);
+                        pos += 3;
+                    }
+                }
+                offsetSeconds = sign * (offsetHours * 3600 + offsetMinutes * 60 + offsetSecs);
+            } else {
+                throw invalid(value);
+            }
+        }
+        if (pos != length || month < 1 || month > 12 || day < 1 || day > 31
+                || hour > 23 || minute > 59 || second > 59) {
+            throw invalid(value);
+        }
+        
+        long days = daysFromCivil(year, month, day);
+        long seconds = days * 86_400L + hour * 3_600L + minute * 60L + second - offsetSeconds;
+        return seconds * 1000L + millis;
+    }
+    
+    private static void write(long epochMillis, char[] chars) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        
+        // Civil-from-days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        
+        int hour = millisOfDay / 3_600_000;
+        int minute = (millisOfDay / 60_000) % 60;
+        int second = (millisOfDay / 1_000) % 60;
+        int millis = millisOfDay % 1_000;
+        
+        put(chars, 0, year, 4);
+        chars[4] = '-';
+        put(chars, 5, month, 2);
+        chars[7] = '-';
+        put(chars, 8, day, 2);
+        chars[10] = 'T';
+        put(chars, 11, hour, 2);
+        chars[13] = ':';
+        put(chars, 14, minute, 2);
+        chars[16] = ':';
+        put(chars, 17, second, 2);
+        chars[19] = '.';
+        put(chars, 20, millis, 3);
+        chars[23] = 'Z';
+    }
+    
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+    
+    private static void put(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+    
+    private static int digits(CharSequence value, int offset, int count) {
+        if (offset + count > value.length()) {
+            throw invalid(value);
+        }
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                throw invalid(value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+    
+    private static void expect(CharSequence value, int offset, char expected) {
+        if (offset >= value.length() || value.charAt(offset) != expected) {
+            throw invalid(value);
+        }
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isTimeSeparator(char c) {
+        return c == 'T' || c == 't' || c == ' ';
+    }
+    
+    private static IllegalArgumentException invalid(CharSequence value) {
+        return new IllegalArgumentException("Unsupported timestamp: " + value);
+    }
+}
@@ -0,0 +1,96 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.TypingSpeedData;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming adapter reading typing_speed_tests rows straight into {@link TypingSpeedData}.
+ * Returns null for rows whose timestamp cannot be parsed.
+ */
+public class TypingSpeedDataAdapter extends TypeAdapter<TypingSpeedData> {
+    
+    @Override
+    public TypingSpeedData read(JsonReader in) throws IOException {
+        return read(in, null);
+    }
+    
+    /**
+     * Reads a row, recording its id and raw time values in {@code key} when it is not null
+     */
+    public TypingSpeedData read(JsonReader in, RowKey key) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Date timestamp = null;
+        int wordsPerMinute = 0;
+        double accuracy = 0.0;
+        String sampleText = "";
+        
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "timestamp":
+                    String time = JsonFields.nextStringOrNull(in);
+                    if (key != null) {
+                        key.setTime(time);
+                    }
+                    timestamp = JsonFields.parseTimestamp(time);
+                    break;
+                case "words_per_minute":
+                    wordsPerMinute = in.nextInt();
+                    break;
+                case "accuracy_percentage":
+                    accuracy = in.nextDouble();
+                    break;
+                case "sample_text":
+                    String text = JsonFields.nextStringOrNull(in);
+                    sampleText = text != null ? text : "";
+                    break;
+                case "id":
+                    if (key != null) {
+                        key.setId(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                case "created_at":
+                    if (key != null) {
+                        key.setCreatedAt(JsonFields.nextStringOrNull(in));
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        
+        if (timestamp == null) {
+            return null;
+        }
+        return new TypingSpeedData(timestamp, wordsPerMinute, accuracy, sampleText);
+    }
+    
+    @Override
+    public void write(JsonWriter out, TypingSpeedData value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("timestamp").value(JsonFields.formatTimestamp(value.getTimestamp()));
+        out.name("words_per_minute").value(value.getWordsPerMinute());
+        out.name("accuracy_percentage").value(value.getAccuracy());
+        out.name("sample_text").value(value.getSampleText());
+        out.endObject();
+    }
+}
@@ -0,0 +1,466 @@
+package com.flowstate.app.supabase.realtime;
+
+import android.util.Log;
+import com.flowstate.app.supabase.http.QueryCache;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Client for Supabase Realtime row changes (Postgres changes).
+ *
+ * Every subscription is a channel joined over one shared websocket using the Phoenix
+ * protocol. The socket is opened by the first subscription and closed when the last one
+ * is cancelled. A heartbeat that goes unanswered for a whole interval means the
+ * connection is dead; it is then reopened with backoff and every channel rejoined.
+ * Changes made while disconnected are not replayed, so listeners are told when a
+ * channel is rejoined and should reload.
+ *
+ * Each change also invalidates cached reads of its table in the {@link QueryCache}.
+ * Listeners are called in order on the socket thread and must not block.
+ */
+public class RealtimeClient {
+    
+    private static final String TAG = "RealtimeClient";
+    
+    private static final long HEARTBEAT_MS = 25_000;
+    private static final long[] RECONNECT_DELAYS_MS = {1_000, 2_000, 5_000, 10_000};
+    private static final int CLOSE_NORMAL = 1000;
+    private static final String PHOENIX_TOPIC = "phoenix";
+    
+    private final OkHttpClient httpClient;
+    private final HttpUrl socketUrl;
+    private final Supplier<String> accessToken;
+    private final QueryCache queryCache;
+    private final long heartbeatMs;
+    private final ScheduledExecutorService timer;
+    
+    // Subscribed channels by topic, in subscription order
+    private final Map<String, Channel> channels = new LinkedHashMap<>();
+    private WebSocket socket;
+    private boolean open;
+    private int nextRef;
+    private int nextChannel;
+    private int reconnectAttempts;
+    // Ref of the heartbeat still waiting for its reply, or null
+    private String pendingHeartbeat;
+    private ScheduledFuture<?> heartbeat;
+    private ScheduledFuture<?> reconnect;
+    
+    /**
+     * @param accessToken supplies the session's access token when a channel is joined;
+     *                    without one only rows visible to anonymous users are delivered
+     */
+    public RealtimeClient(OkHttpClient httpClient, String supabaseUrl, String apiKey, Supplier<String> accessToken,
+                          QueryCache queryCache) {
+        this(httpClient, supabaseUrl, apiKey, accessToken, queryCache, HEARTBEAT_MS);
+    }
+    
+    /**
+     * With a custom heartbeat interval, so tests need not wait for a dead connection to be noticed
+     */
+    RealtimeClient(OkHttpClient httpClient, String supabaseUrl, String apiKey, Supplier<String> accessToken,
+                   QueryCache queryCache, long heartbeatMs) {
+        this.httpClient = httpClient;
+        this.socketUrl = HttpUrl.get(supabaseUrl).newBuilder()
+                .addPathSegments("realtime/v1/websocket")
+                .addQueryParameter("apikey", apiKey)
+                .addQueryParameter("vsn", "1.0.0")
+                .build();
+        this.accessToken = accessToken;
+        this.queryCache = queryCache;
+        this.heartbeatMs = heartbeatMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "supabase-realtime");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Receive inserts, updates and deletes of {@code table} rows owned by {@code userId}.
+     * A null user subscribes to every row the session may read, for tables without a
+     * user_id column; row level security still applies.
+     */
+    public synchronized Subscription subscribe(String table, String userId, ChangeListener listener) {
+        String filter = userId != null ? "user_id=eq." + userId : null;
+        Channel channel = new Channel("realtime:" + table + ":" + (++nextChannel), table, filter, listener);
+        channels.put(channel.topic, channel);
+        if (socket == null) {
+            connect();
+        } else if (open) {
+            join(channel);
+        }
+        return channel;
+    }
+    
+    /**
+     * Pass a refreshed access token to joined channels, so they keep receiving changes
+     * after the previous token expires
+     */
+    public synchronized void setAccessToken(String token) {
+        if (!open || token == null) {
+            return;
+        }
+        JsonObject payload = new JsonObject();
+        payload.addProperty("access_token", token);
+        for (Channel channel : channels.values()) {
+            if (channel.joined) {
+                send(channel.topic, "access_token", payload, nextRef(), channel.joinRef);
+            }
+        }
+    }
+    
+    /**
+     * Cancel every subscription and close the socket, e.g. on sign-out
+     */
+    public synchronized void close() {
+        channels.clear();
+        disconnect();
+    }
+    
+    private synchronized void unsubscribe(Channel channel) {
+        if (channels.remove(channel.topic) == null) {
+            return;
+        }
+        if (channels.isEmpty()) {
+            disconnect();
+        } else if (open && channel.joined) {
+            send(channel.topic, "phx_leave", new JsonObject(), nextRef(), channel.joinRef);
+        }
+    }
+    
+    private void connect() {
+        cancel(reconnect);
+        reconnect = null;
+        socket = httpClient.newWebSocket(new Request.Builder().url(socketUrl).build(), new SocketListener());
+    }
+    
+    private void disconnect() {
+        cancel(heartbeat);
+        cancel(reconnect);
+        heartbeat = null;
+        reconnect = null;
+        if (socket != null) {
+            socket.close(CLOSE_NORMAL, null);
+            socket = null;
+        }
+        open = false;
+        pendingHeartbeat = null;
+        reconnectAttempts = 0;
+    }
+    
+    private void join(Channel channel) {
+        JsonObject change = new JsonObject();
+        change.addProperty("event", "*");
+        change.addProperty("schema", "public");
+        change.addProperty("table", channel.table);
+        if (channel.filter != null) {
+            change.addProperty("filter", channel.filter);
+        }
+        JsonArray changes = new JsonArray();
+        changes.add(change);
+        JsonObject config = new JsonObject();
+        config.add("postgres_changes", changes);
+        JsonObject payload = new JsonObject();
+        payload.add("config", config);
+        String token = accessToken.get();
+        if (token != null) {
+            payload.addProperty("access_token", token);
+        }
+        channel.joined = false;
+        channel.joinRef = nextRef();
+        send(channel.topic, "phx_join", payload, channel.joinRef, channel.joinRef);
+    }
+    
+    private void rejoinLater(Channel channel) {
+        long delay = RECONNECT_DELAYS_MS[Math.min(channel.joinAttempts++, RECONNECT_DELAYS_MS.length - 1)];
+        timer.schedule(() -> {
+            synchronized (RealtimeClient.this) {
+                if (open && channels.get(channel.topic) == channel && !channel.joined) {
+                    join(channel);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private synchronized void sendHeartbeat() {
+        if (!open) {
+            return;
+        }
+        if (pendingHeartbeat != null) {
+            // No reply for a whole interval; the failure callback reconnects
+            Log.w(TAG, "Heartbeat timed out, reconnecting");
+            socket.cancel();
+            return;
+        }
+        pendingHeartbeat = nextRef();
+        send(PHOENIX_TOPIC, "heartbeat", new JsonObject(), pendingHeartbeat, null);
+    }
+    
+    private void send(String topic, String event, JsonObject payload, String ref, String joinRef) {
+        JsonObject message = new JsonObject();
+        message.addProperty("topic", topic);
+        message.addProperty("event", event);
+        message.add("payload", payload);
+        message.addProperty("ref", ref);
+        if (joinRef != null) {
+            message.addProperty("join_ref", joinRef);
+        }
+        socket.send(message.toString());
+    }
+    
+    private String nextRef() {
+        return Integer.toString(++nextRef);
+    }
+    
+    private void onOpen(WebSocket webSocket) {
+        synchronized (this) {
+            if (webSocket != socket) {
+                return;
+            }
+            open = true;
+            reconnectAttempts = 0;
+            pendingHeartbeat = null;
+            heartbeat = timer.scheduleAtFixedRate(this::sendHeartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+            for (Channel channel : channels.values()) {
+                join(channel);
+            }
+        }
+    }
+    
+    private void onMessage(WebSocket webSocket, String text) {
+        Runnable notification;
+        synchronized (this) {
+            if (webSocket != socket) {
+                return;
+            }
+            JsonObject message;
+            try {
+                message = JsonParser.parseString(text).getAsJsonObject();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Unreadable message: " + text);
+                return;
+            }
+            String topic = stringOrNull(message, "topic");
+            String event = stringOrNull(message, "event");
+            String ref = stringOrNull(message, "ref");
+            JsonObject payload = message.has("payload") && message.get("payload").isJsonObject()
+                    ? message.getAsJsonObject("payload") : new JsonObject();
+            if (PHOENIX_TOPIC.equals(topic)) {
+                if ("phx_reply".equals(event) && ref != null && ref.equals(pendingHeartbeat)) {
+                    pendingHeartbeat = null;
+                }
+                return;
+            }
+            Channel channel = channels.get(topic);
+            if (channel == null || event == null) {
+                return;
+            }
+            notification = handle(channel, event, ref, payload);
+        }
+        // Outside the lock, so a listener may subscribe or cancel
+        if (notification != null) {
+            notification.run();
+        }
+    }
+    
+    /**
+     * Applies a channel message, returning the listener call it results in, if any
+     */
+    private Runnable handle(Channel channel, String event, String ref, JsonObject payload) {
+        switch (event) {
+            case "phx_reply":
+                if (ref == null || !ref.equals(channel.joinRef) || channel.joined) {
+                    return null;
+                }
+                if (!"ok".equals(stringOrNull(payload, "status"))) {
+                    Log.w(TAG, "Could not subscribe to " + channel.table + ": " + payload.get("response"));
+                    rejoinLater(channel);
+                    return null;
+                }
+                channel.joined = true;
+                channel.joinAttempts = 0;
+                if (channel.joinedBefore) {
+                    return channel.listener::onResubscribed;
+                }
+                channel.joinedBefore = true;
+                return null;
+            case "postgres_changes":
+                RowChange change = parseChange(payload);
+                if (change == null) {
+                    return null;
+                }
+                queryCache.invalidate(change.getTable());
+                return () -> channel.listener.onChange(change);
+            case "phx_error":
+            case "phx_close":
+                // The server dropped the channel, e.g. when its token expired; join again
+                if (channel.joined) {
+                    channel.joined = false;
+                    rejoinLater(channel);
+                }
+                return null;
+            default:
+                // Presence and system messages are not used
+                return null;
+        }
+    }
+    
+    private void onClosed(WebSocket webSocket, Throwable error) {
+        synchronized (this) {
+            if (webSocket != socket) {
+                return;
+            }
+            if (error != null) {
+                Log.w(TAG, "Connection lost: " + error);
+            }
+            cancel(heartbeat);
+            heartbeat = null;
+            socket = null;
+            open = false;
+            pendingHeartbeat = null;
+            for (Channel channel : channels.values()) {
+                channel.joined = false;
+            }
+            if (channels.isEmpty()) {
+                return;
+            }
+            long delay = RECONNECT_DELAYS_MS[Math.min(reconnectAttempts++, RECONNECT_DELAYS_MS.length - 1)];
+            reconnect = timer.schedule(() -> {
+                synchronized (RealtimeClient.this) {
+                    if (socket == null && !channels.isEmpty()) {
+                        connect();
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Reads the data of a postgres_changes message, or null if it is not a row change
+     */
+    private static RowChange parseChange(JsonObject payload) {
+        if (!payload.has("data") || !payload.get("data").isJsonObject()) {
+            return null;
+        }
+        JsonObject data = payload.getAsJsonObject("data");
+        String type = stringOrNull(data, "type");
+        String table = stringOrNull(data, "table");
+        if (type == null || table == null) {
+            return null;
+        }
+        RowChange.Type changeType;
+        try {
+            changeType = RowChange.Type.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new RowChange(table, changeType, objectOrNull(data, "record"), objectOrNull(data, "old_record"),
+                stringOrNull(data, "commit_timestamp"));
+    }
+    
+    private static String stringOrNull(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+    
+    private static JsonObject objectOrNull(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        // Deletes carry an empty record
+        return value != null && value.isJsonObject() && value.getAsJsonObject().size() > 0
+                ? value.getAsJsonObject() : null;
+    }
+    
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+    
+    /**
+     * Receives the changes of one subscription
+     */
+    public interface ChangeListener {
+        void onChange(RowChange change);
+        
+        /**
+         * The subscription was joined again after the connection was lost. Changes made
+         * in the meantime were not delivered, so anything derived from them should be reloaded.
+         */
+        default void onResubscribed() {
+        }
+    }
+    
+    /**
+     * Handle to an active subscription
+     */
+    public interface Subscription {
+        void cancel();
+    }
+    
+    private class Channel implements Subscription {
+        final String topic;
+        final String table;
+        final String filter;
+        final ChangeListener listener;
+        String joinRef;
+        boolean joined;
+        boolean joinedBefore;
+        int joinAttempts;
+        
+        Channel(String topic, String table, String filter, ChangeListener listener) {
+            this.topic = topic;
+            this.table = table;
+            this.filter = filter;
+            this.listener = listener;
+        }
+        
+        @Override
+        public void cancel() {
+            unsubscribe(this);
+        }
+    }
+    
+    private class SocketListener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            RealtimeClient.this.onOpen(webSocket);
+        }
+        
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            RealtimeClient.this.onMessage(webSocket, text);
+        }
+        
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(CLOSE_NORMAL, null);
+        }
+        
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            RealtimeClient.this.onClosed(webSocket, null);
+        }
+        
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            RealtimeClient.this.onClosed(webSocket, t);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.flowstate.app.supabase.realtime;
+
+import com.google.gson.JsonObject;
+
+/**
+ * One row change pushed by Supabase Realtime
+ */
+public class RowChange {
+    
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+    
+    private final String table;
+    private final Type type;
+    private final JsonObject record;
+    private final JsonObject oldRecord;
+    private final String commitTimestamp;
+    
+    public RowChange(String table, Type type, JsonObject record, JsonObject oldRecord, String commitTimestamp) {
+        this.table = table;
+        this.type = type;
+        this.record = record;
+        this.oldRecord = oldRecord;
+        this.commitTimestamp = commitTimestamp;
+    }
+    
+    public String getTable() {
+        return table;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * The row after the change, in the same form as a PostgREST row; null for deletes
+     */
+    public JsonObject getRecord() {
+        return record;
+    }
+    
+    /**
+     * The row before the change. With row level security this holds only the primary key,
+     * which is what identifies the row removed by a delete.
+     */
+    public JsonObject getOldRecord() {
+        return oldRecord;
+    }
+    
+    public String getCommitTimestamp() {
+        return commitTimestamp;
+    }
+    
+    /**
+     * Id of the changed row, or null if the change does not carry one
+     */
+    public String getId() {
+        JsonObject row = record != null ? record : oldRecord;
+        if (row == null || !row.has("id") || row.get("id").isJsonNull()) {
+            return null;
+        }
+        return row.get("id").getAsString();
+    }
+}
@@ -2,180 +2,603 @@ package com.flowstate.app.supabase.repository;
 
 import android.content.Context;
 import com.flowstate.app.data.models.BiometricData;
-import com.flowstate.app.supabase.SupabaseClient;
-import com.flowstate.app.supabase.api.SupabasePostgrestApi;
+import com.flowstate.app.data.models.HeartRateSeries;
+import com.flowstate.app.data.models.HourlyBiometrics;
+import com.flowstate.app.supabase.api.PostgrestQuery;
+import com.flowstate.app.supabase.csv.CsvReader;
+import com.flowstate.app.supabase.http.RequestScheduler;
+import com.flowstate.app.supabase.json.BiometricDataAdapter;
+import com.flowstate.app.supabase.json.DeletedRowsAdapter;
+import com.flowstate.app.supabase.json.HourlyBiometricsAdapter;
+import com.flowstate.app.supabase.json.RowKey;
+import com.flowstate.app.supabase.json.TimestampCodec;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Repository for managing biometric data in Supabase (Java implementation)
  */
-public class BiometricDataRepository {
+public class BiometricDataRepository extends PostgrestRepository<BiometricData> {
     
-    private SupabaseClient supabaseClient;
-    private SupabasePostgrestApi postgrestApi;
-    private SimpleDateFormat dateFormat;
+    // Upper bound on rows per bulk request, keeps bodies well under PostgREST/proxy limits
+    public static final int MAX_CHUNK_ROWS = 500;
+    
+    // Raw readings deleted per compaction call; each call is one server transaction
+    private static final int COMPACTION_BATCH_ROWS = 50_000;
+    
+    private static final HourlyBiometricsAdapter hourlyAdapter = new HourlyBiometricsAdapter();
+    private static final DeletedRowsAdapter deletedRowsAdapter = new DeletedRowsAdapter();
     
     public BiometricDataRepository(Context context) {
-        this.supabaseClient = SupabaseClient.getInstance(context);
-        this.postgrestApi = supabaseClient.getPostgrestApi();
-        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        super(context, new BiometricCodec());
     }
     
     /**
-     * Insert or update biometric data
+     * Insert or update biometric data.
+     * The write is recorded in the offline outbox and acknowledged immediately;
+     * it is sent to Supabase in the background, surviving network loss and restarts.
      */
     public void upsertBiometricData(String userId, BiometricData biometricData, DataCallback callback) {
-        Map<String, Object> dataMap = new HashMap<>();
-        dataMap.put("user_id", userId);
-        dataMap.put("timestamp", dateFormat.format(biometricData.getTimestamp()));
-        dataMap.put("heart_rate", biometricData.getHeartRate());
-        dataMap.put("sleep_minutes", biometricData.getSleepMinutes());
-        dataMap.put("sleep_quality", biometricData.getSleepQuality());
-        dataMap.put("skin_temperature", biometricData.getSkinTemperature());
-        
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
+        deliver(insert(userId, biometricData), callback);
+    }
+    
+    /**
+     * Queue readings for writing, each field to the table that stores it; see {@link #splitByTable}
+     */
+    @Override
+    public CompletableFuture<Void> insertAll(String userId, List<BiometricData> values) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            for (TableRows table : splitByTable(userId, values)) {
+                outbox.enqueueAll(table.table, writePrefer(), table.onConflict, table.rows);
+            }
+            invalidateReads();
+            future.complete(null);
+        } catch (RuntimeException e) {
+            // SQLite failures surface as runtime exceptions
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Upsert a batch of readings using PostgREST bulk inserts.
+     * The batch is split into heart rate, sleep and temperature rows (see {@link #splitByTable}),
+     * and each table's rows are sent as JSON array bodies of at most {@link #MAX_CHUNK_ROWS} rows.
+     * All chunks are sent in parallel, so a typical sync takes one request per table. Each
+     * chunk is reported separately so only failed chunks need to be retried. Rows already
+     * stored for the same time are updated, so retrying a chunk is safe.
+     */
+    public void upsertBiometricBatch(String userId, List<BiometricData> batch, BatchCallback callback) {
+        List<TableRows> chunks = new ArrayList<>();
+        for (TableRows table : splitByTable(userId, batch)) {
+            for (int start = 0; start < table.rows.size(); start += MAX_CHUNK_ROWS) {
+                chunks.add(table.slice(start, Math.min(start + MAX_CHUNK_ROWS, table.rows.size())));
+            }
+        }
+        
+        BatchResult result = new BatchResult(chunks.size());
+        if (chunks.isEmpty()) {
+            callback.onComplete(result);
+            return;
+        }
+        
+        String authorization = authorization();
         String apikey = supabaseClient.getSupabaseAnonKey();
         
-        // Use upsert via POST with Prefer header
-        postgrestApi.insertHeartRateReading(authorization, apikey, "resolution=merge-duplicates", dataMap)
-                .enqueue(new Callback<Void>() {
-                    @Override
-                    public void onResponse(Call<Void> call, Response<Void> response) {
-                        if (response.isSuccessful()) {
-                            callback.onSuccess(null);
-                        } else {
-                            String error = "Failed to save biometric data";
-                            try {
-                                if (response.errorBody() != null) {
-                                    error = response.errorBody().string();
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkIndex = i;
+            TableRows chunkRows = chunks.get(i);
+            List<BiometricData> chunk = chunkRows.readings();
+            
+            postgrestApi.upsertRows(authorization, apikey, writePrefer(), chunkRows.onConflict, chunkRows.columns,
+                            chunkRows.table, chunkRows.rows)
+                    .enqueue(new Callback<Void>() {
+                        @Override
+                        public void onResponse(Call<Void> call, Response<Void> response) {
+                            if (response.isSuccessful()) {
+                                invalidateReads();
+                                chunkDone(chunkIndex, chunk, null);
+                            } else {
+                                String error = "Failed to save " + chunkRows.table + " batch (HTTP "
+                                        + response.code() + ")";
+                                try {
+                                    if (response.errorBody() != null) {
+                                        error = response.errorBody().string();
+                                    }
+                                } catch (IOException e) {
+                                    e.printStackTrace();
                                 }
-                            } catch (IOException e) {
-                                e.printStackTrace();
+                                chunkDone(chunkIndex, chunk, new Exception(error));
                             }
-                            callback.onError(new Exception(error));
                         }
-                    }
-                    
-                    @Override
-                    public void onFailure(Call<Void> call, Throwable t) {
-                        callback.onError(t);
-                    }
-                });
+                        
+                        @Override
+                        public void onFailure(Call<Void> call, Throwable t) {
+                            chunkDone(chunkIndex, chunk, t);
+                        }
+                        
+                        private void chunkDone(int index, List<BiometricData> rows, Throwable error) {
+                            callback.onChunkComplete(index, rows, error);
+                            if (result.record(rows, error)) {
+                                callback.onComplete(result);
+                            }
+                        }
+                    });
+        }
     }
     
     /**
      * Get biometric data for a user within a date range
      */
     public void getBiometricData(String userId, Date startDate, Date endDate, DataCallback callback) {
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
-        String apikey = supabaseClient.getSupabaseAnonKey();
-        
-        Map<String, String> queryParams = new HashMap<>();
-        queryParams.put("user_id", "eq." + userId);
-        queryParams.put("timestamp", "gte." + dateFormat.format(startDate) + ",lte." + dateFormat.format(endDate));
-        queryParams.put("order", "timestamp.desc");
+        deliver(getRange(userId, startDate, endDate), callback);
+    }
+    
+    /**
+     * Get heart rate, sleep and skin temperature for a user within a date range as one
+     * time-ordered list, oldest first. The three tables are read in parallel, each in keyset
+     * pages so none is cut off at the server's row limit, and rows sharing a timestamp are
+     * combined into one record. For long windows {@link #getHourlyBiometrics} is far smaller.
+     */
+    public CompletableFuture<List<BiometricData>> getCombinedBiometricData(String userId, Date startDate, Date endDate) {
+        CompletableFuture<List<BiometricData>> heartRate = selectAll("heart_rate_readings", "timestamp",
+                new String[]{"timestamp", "heart_rate_bpm"}, userId, startDate, endDate);
+        CompletableFuture<List<BiometricData>> sleep = selectAll("sleep_sessions", "sleep_start",
+                new String[]{"sleep_start", "duration_minutes", "sleep_quality_score"}, userId, startDate, endDate);
+        CompletableFuture<List<BiometricData>> temperature = selectAll("temperature_readings", "timestamp",
+                new String[]{"timestamp", "temperature_celsius"}, userId, startDate, endDate,
+                PostgrestQuery.Filter.eq("temperature_type", "skin"));
         
-        postgrestApi.getHeartRateReadings(authorization, apikey, queryParams)
-                .enqueue(new Callback<List<Map<String, Object>>>() {
+        return CompletableFuture.allOf(heartRate, sleep, temperature)
+                .thenApply(ignored -> mergeByTime(Arrays.asList(
+                        oldestFirst(heartRate.join()), oldestFirst(sleep.join()), oldestFirst(temperature.join()))));
+    }
+    
+    public void getCombinedBiometricData(String userId, Date startDate, Date endDate, DataCallback callback) {
+        deliver(getCombinedBiometricData(userId, startDate, endDate), callback);
+    }
+    
+    /**
+     * Get hourly heart rate and sleep quality aggregates for a user within a date range,
+     * computed server-side so a 30 day window is about 720 rows rather than every reading.
+     * Every hour overlapping the range is returned, including a partial first hour, as
+     * {@code GoogleFitManager.readHourlyBiometrics} does. Hours without any readings are omitted.
+     */
+    public CompletableFuture<List<HourlyBiometrics>> getHourlyBiometrics(String userId, Date startDate, Date endDate) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("p_user_id", userId);
+        params.put("p_from", TimestampCodec.format(startDate));
+        params.put("p_to", TimestampCodec.format(endDate));
+        return rpc("hourly_biometrics", params, hourlyAdapter);
+    }
+    
+    public void getHourlyBiometrics(String userId, Date startDate, Date endDate, DataCallback callback) {
+        deliver(getHourlyBiometrics(userId, startDate, endDate), callback);
+    }
+    
+    /**
+     * Every heart rate reading for a user within a date range, oldest first, as primitive columns.
+     *
+     * Intended for full-history exports. Pages of {@link #MAX_PAGE_SIZE} readings are requested
+     * as CSV at background priority and parsed field by field while the body streams in, so no
+     * response is buffered and no object is created per reading. Each page resumes after the
+     * last timestamp read, which is unique per user.
+     */
+    public CompletableFuture<HeartRateSeries> exportHeartRate(String userId, Date startDate, Date endDate) {
+        CompletableFuture<HeartRateSeries> future = new CompletableFuture<>();
+        PostgrestQuery.Filter first = PostgrestQuery.Filter.gte("timestamp", TimestampCodec.format(startDate));
+        exportPage(userId, first, TimestampCodec.format(endDate), new HeartRateSeries(), future);
+        return future;
+    }
+    
+    public void exportHeartRate(String userId, Date startDate, Date endDate, DataCallback callback) {
+        deliver(exportHeartRate(userId, startDate, endDate), callback);
+    }
+    
+    private void exportPage(String userId, PostgrestQuery.Filter after, String end, HeartRateSeries series,
+                            CompletableFuture<HeartRateSeries> future) {
+        // Cancelled by the caller
+        if (future.isDone()) {
+            return;
+        }
+        PostgrestQuery query = new PostgrestQuery()
+                .select("timestamp", "heart_rate_bpm")
+                .eq("user_id", userId)
+                .where(after)
+                .lte("timestamp", end)
+                .order("timestamp", true)
+                .range(0, MAX_PAGE_SIZE - 1);
+        postgrestApi.selectCsv(authorization(), supabaseClient.getSupabaseAnonKey(),
+                        RequestScheduler.Priority.BACKGROUND.name(), "items", query.getRange(), codec.table(),
+                        query.toQueryMap())
+                .enqueue(new Callback<ResponseBody>() {
                     @Override
-                    public void onResponse(Call<List<Map<String, Object>>> call, 
-                                         Response<List<Map<String, Object>>> response) {
-                        if (response.isSuccessful() && response.body() != null) {
-                            List<BiometricData> biometricDataList = new ArrayList<>();
-                            for (Map<String, Object> map : response.body()) {
-                                try {
-                                    Date timestamp = dateFormat.parse(map.get("timestamp").toString());
-                                    BiometricData data = new BiometricData(
-                                        timestamp,
-                                        map.get("heart_rate") != null ? 
-                                            ((Number) map.get("heart_rate")).intValue() : null,
-                                        map.get("sleep_minutes") != null ? 
-                                            ((Number) map.get("sleep_minutes")).intValue() : null,
-                                        map.get("sleep_quality") != null ? 
-                                            ((Number) map.get("sleep_quality")).doubleValue() : null,
-                                        map.get("skin_temperature") != null ? 
-                                            ((Number) map.get("skin_temperature")).doubleValue() : null
-                                    );
-                                    biometricDataList.add(data);
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
+                    public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                        if (!response.isSuccessful() || response.body() == null) {
+                            complete(future, null, new Exception(errorMessage(response, "Failed to export heart rate")));
+                            return;
+                        }
+                        // Raw value, so microseconds are kept and the next page resumes exactly
+                        StringBuilder lastTime = new StringBuilder();
+                        int read = 0;
+                        try (ResponseBody body = response.body(); CsvReader csv = new CsvReader(body.source())) {
+                            // Header row
+                            csv.nextRow();
+                            while (csv.nextRow()) {
+                                CharSequence time = csv.nextField();
+                                long millis = TimestampCodec.parse(time);
+                                lastTime.setLength(0);
+                                lastTime.append(time);
+                                series.add(millis, csv.nextInt());
+                                read++;
                             }
-                            callback.onSuccess(biometricDataList);
+                        } catch (IOException | RuntimeException e) {
+                            complete(future, null, e);
+                            return;
+                        }
+                        if (read < MAX_PAGE_SIZE) {
+                            complete(future, series, null);
                         } else {
-                            callback.onError(new Exception("Failed to fetch biometric data"));
+                            exportPage(userId, PostgrestQuery.Filter.gt("timestamp", lastTime.toString()), end,
+                                    series, future);
                         }
                     }
                     
                     @Override
-                    public void onFailure(Call<List<Map<String, Object>>> call, Throwable t) {
-                        callback.onError(t);
+                    public void onFailure(Call<ResponseBody> call, Throwable t) {
+                        complete(future, null, t);
                     }
                 });
     }
     
+    /**
+     * Compact the signed-in user's raw heart rate readings older than their retention setting
+     * (user_settings.raw_retention_days) into the hourly and daily rollups, server-side.
+     * Runs bounded batches until one deletes less than a full batch and completes with the
+     * number of readings deleted. The rollups keep the compacted history.
+     */
+    public CompletableFuture<Integer> compactRawReadings() {
+        return compactBatches(0);
+    }
+    
+    public void compactRawReadings(DataCallback callback) {
+        deliver(compactRawReadings(), callback);
+    }
+    
+    private CompletableFuture<Integer> compactBatches(int deletedSoFar) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("p_max_rows", COMPACTION_BATCH_ROWS);
+        return rpc("compact_my_raw_biometrics", params, deletedRowsAdapter).thenCompose(counts -> {
+            int deleted = 0;
+            for (Integer count : counts) {
+                deleted += count;
+            }
+            if (deleted > 0) {
+                // Goes through an RPC, which the query cache does not see as a write
+                supabaseClient.getQueryCache().invalidate(codec.table());
+                invalidateReads();
+            }
+            return deleted >= COMPACTION_BATCH_ROWS
+                    ? compactBatches(deletedSoFar + deleted)
+                    : CompletableFuture.completedFuture(deletedSoFar + deleted);
+        });
+    }
+    
     /**
      * Get latest biometric data for a user
      */
     public void getLatestBiometricData(String userId, DataCallback callback) {
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
-        String apikey = supabaseClient.getSupabaseAnonKey();
-        
-        Map<String, String> queryParams = new HashMap<>();
-        queryParams.put("user_id", "eq." + userId);
-        queryParams.put("order", "timestamp.desc");
-        queryParams.put("limit", "1");
+        deliver(getLatest(userId), callback);
+    }
+    
+    /**
+     * Splits readings into rows for the tables their fields are stored in: heart rate in
+     * heart_rate_readings, sleep in sleep_sessions (starting at the reading's timestamp) and
+     * skin temperature in temperature_readings. A reading only yields a row for a table
+     * when it has a value for it.
+     *
+     * Readings for the same time are coalesced into one row per table, later non-null values
+     * winning, since one upsert cannot update a row twice. Rows are grouped by the columns
+     * they set and each group names only those, so a merge never overwrites a stored value
+     * with NULL. Tables without rows are left out.
+     */
+    static List<TableRows> splitByTable(String userId, List<BiometricData> batch) {
+        Map<String, CoalescedRow> heartRate = new LinkedHashMap<>();
+        Map<String, CoalescedRow> sleep = new LinkedHashMap<>();
+        Map<String, CoalescedRow> temperature = new LinkedHashMap<>();
+        for (BiometricData data : batch) {
+            String timestamp = TimestampCodec.format(data.getTimestamp());
+            if (data.getHeartRate() != null) {
+                rowAt(heartRate, timestamp, data).put("heart_rate_bpm", data.getHeartRate());
+            }
+            if (data.getSleepMinutes() != null || data.getSleepQuality() != null) {
+                Map<String, Object> values = rowAt(sleep, timestamp, data);
+                if (data.getSleepMinutes() != null) {
+                    values.put("duration_minutes", data.getSleepMinutes());
+                }
+                if (data.getSleepQuality() != null) {
+                    values.put("sleep_quality_score", data.getSleepQuality());
+                }
+            }
+            if (data.getSkinTemperature() != null) {
+                Map<String, Object> values = rowAt(temperature, timestamp, data);
+                values.put("temperature_celsius", data.getSkinTemperature());
+                values.put("temperature_type", "skin");
+            }
+        }
+        List<TableRows> tables = new ArrayList<>();
+        groupByColumns(tables, "heart_rate_readings", "timestamp", userId, heartRate);
+        groupByColumns(tables, "sleep_sessions", "sleep_start", userId, sleep);
+        groupByColumns(tables, "temperature_readings", "timestamp", userId, temperature);
+        return tables;
+    }
+    
+    /**
+     * Values of the row at {@code time}, recording {@code source} as one of its readings
+     */
+    private static Map<String, Object> rowAt(Map<String, CoalescedRow> rows, String time, BiometricData source) {
+        CoalescedRow row = rows.get(time);
+        if (row == null) {
+            row = new CoalescedRow();
+            rows.put(time, row);
+        }
+        row.sources.add(source);
+        return row.values;
+    }
+    
+    private static void groupByColumns(List<TableRows> tables, String table, String timeColumn, String userId,
+                                       Map<String, CoalescedRow> rows) {
+        Map<Set<String>, TableRows> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, CoalescedRow> entry : rows.entrySet()) {
+            CoalescedRow coalesced = entry.getValue();
+            TableRows group = groups.get(coalesced.values.keySet());
+            if (group == null) {
+                group = new TableRows(table, "user_id," + timeColumn,
+                        "user_id," + timeColumn + "," + String.join(",", coalesced.values.keySet()));
+                groups.put(coalesced.values.keySet(), group);
+                tables.add(group);
+            }
+            Map<String, Object> row = new HashMap<>(coalesced.values);
+            row.put("user_id", userId);
+            row.put(timeColumn, entry.getKey());
+            group.add(coalesced.sources, row);
+        }
+    }
+    
+    private static List<BiometricData> oldestFirst(List<BiometricData> newestFirst) {
+        List<BiometricData> rows = new ArrayList<>(newestFirst);
+        Collections.reverse(rows);
+        return rows;
+    }
+    
+    /**
+     * Merge-joins lists sorted by ascending timestamp in a single pass, combining the
+     * fields of rows with equal timestamps into one record
+     */
+    static List<BiometricData> mergeByTime(List<List<BiometricData>> sources) {
+        int total = 0;
+        for (List<BiometricData> source : sources) {
+            total += source.size();
+        }
+        List<BiometricData> merged = new ArrayList<>(total);
+        int[] positions = new int[sources.size()];
         
-        // Get one record, ordered by timestamp descending
-        postgrestApi.getHeartRateReadings(authorization, apikey, queryParams)
-                .enqueue(new Callback<List<Map<String, Object>>>() {
-                    @Override
-                    public void onResponse(Call<List<Map<String, Object>>> call, 
-                                         Response<List<Map<String, Object>>> response) {
-                        if (response.isSuccessful() && response.body() != null && !response.body().isEmpty()) {
-                            Map<String, Object> map = response.body().get(0);
-                            try {
-                                Date timestamp = dateFormat.parse(map.get("timestamp").toString());
-                                BiometricData data = new BiometricData(
-                                    timestamp,
-                                    map.get("heart_rate") != null ? 
-                                        ((Number) map.get("heart_rate")).intValue() : null,
-                                    map.get("sleep_minutes") != null ? 
-                                        ((Number) map.get("sleep_minutes")).intValue() : null,
-                                    map.get("sleep_quality") != null ? 
-                                        ((Number) map.get("sleep_quality")).doubleValue() : null,
-                                    map.get("skin_temperature") != null ? 
-                                        ((Number) map.get("skin_temperature")).doubleValue() : null
-                                );
-                                callback.onSuccess(data);
-                            } catch (Exception e) {
-                                callback.onError(e);
-                            }
-                        } else {
-                            callback.onSuccess(null);
-                        }
+        while (true) {
+            long next = Long.MAX_VALUE;
+            for (int i = 0; i < sources.size(); i++) {
+                BiometricData head = headOf(sources.get(i), positions, i);
+                if (head != null && head.getTimestamp().getTime() < next) {
+                    next = head.getTimestamp().getTime();
+                }
+            }
+            if (next == Long.MAX_VALUE) {
+                break;
+            }
+            
+            BiometricData row = new BiometricData(new Date(next));
+            for (int i = 0; i < sources.size(); i++) {
+                BiometricData head;
+                while ((head = headOf(sources.get(i), positions, i)) != null && head.getTimestamp().getTime() == next) {
+                    if (head.getHeartRate() != null) {
+                        row.setHeartRate(head.getHeartRate());
                     }
-                    
-                    @Override
-                    public void onFailure(Call<List<Map<String, Object>>> call, Throwable t) {
-                        callback.onError(t);
+                    if (head.getSleepMinutes() != null) {
+                        row.setSleepMinutes(head.getSleepMinutes());
                     }
-                });
+                    if (head.getSleepQuality() != null) {
+                        row.setSleepQuality(head.getSleepQuality());
+                    }
+                    if (head.getSkinTemperature() != null) {
+                        row.setSkinTemperature(head.getSkinTemperature());
+                    }
+                    positions[i]++;
+                }
+            }
+            merged.add(row);
+        }
+        return merged;
     }
     
     /**
-     * Callback interface for data operations
+     * Current row of a source, skipping rows the adapter could not decode
      */
-    public interface DataCallback {
-        void onSuccess(Object data);
-        void onError(Throwable error);
+    private static BiometricData headOf(List<BiometricData> source, int[] positions, int index) {
+        while (positions[index] < source.size()) {
+            BiometricData head = source.get(positions[index]);
+            if (head != null) {
+                return head;
+            }
+            positions[index]++;
+        }
+        return null;
+    }
+    
+    /**
+     * One table's values at one time, and the readings they were taken from
+     */
+    private static class CoalescedRow {
+        // Sorted, so rows setting the same columns have equal key sets
+        final Map<String, Object> values = new TreeMap<>();
+        final List<BiometricData> sources = new ArrayList<>();
+    }
+    
+    /**
+     * Rows bound for one table that set the same columns, with the readings each row came from
+     */
+    static class TableRows {
+        final String table;
+        final String onConflict;
+        // The columns every row sets, sent with bulk writes
+        final String columns;
+        final List<Map<String, Object>> rows = new ArrayList<>();
+        final List<List<BiometricData>> sources = new ArrayList<>();
+        
+        TableRows(String table, String onConflict, String columns) {
+            this.table = table;
+            this.onConflict = onConflict;
+            this.columns = columns;
+        }
+        
+        void add(List<BiometricData> rowSources, Map<String, Object> row) {
+            sources.add(rowSources);
+            rows.add(row);
+        }
+        
+        /**
+         * The readings behind these rows
+         */
+        List<BiometricData> readings() {
+            List<BiometricData> readings = new ArrayList<>();
+            for (List<BiometricData> rowSources : sources) {
+                readings.addAll(rowSources);
+            }
+            return readings;
+        }
+        
+        TableRows slice(int from, int to) {
+            TableRows slice = new TableRows(table, onConflict, columns);
+            slice.rows.addAll(rows.subList(from, to));
+            slice.sources.addAll(sources.subList(from, to));
+            return slice;
+        }
+    }
+    
+    /**
+     * Callback interface for batch uploads. {@code onChunkComplete} is called once per chunk
+     * (with a null error on success) and {@code onComplete} once all chunks have finished.
+     * A chunk holds rows for one table; its {@code rows} are the readings they came from.
+     */
+    public interface BatchCallback {
+        void onChunkComplete(int chunkIndex, List<BiometricData> rows, Throwable error);
+        void onComplete(BatchResult result);
+    }
+    
+    /**
+     * Aggregated outcome of a batch upload
+     */
+    public static class BatchResult {
+        private final int chunkCount;
+        private int completedChunks;
+        private int savedRows;
+        // A reading with rows in several failed chunks is listed once
+        private final Set<BiometricData> failedRows = new LinkedHashSet<>();
+        private Throwable lastError;
+        
+        BatchResult(int chunkCount) {
+            this.chunkCount = chunkCount;
+        }
+        
+        /**
+         * Records a finished chunk, returning true when it was the last one
+         */
+        synchronized boolean record(List<BiometricData> rows, Throwable error) {
+            if (error == null) {
+                savedRows += rows.size();
+            } else {
+                failedRows.addAll(rows);
+                lastError = error;
+            }
+            completedChunks++;
+            return completedChunks == chunkCount;
+        }
+        
+        public int getChunkCount() {
+            return chunkCount;
+        }
+        
+        /**
+         * Readings saved, counted once for each table they were written to
+         */
+        public synchronized int getSavedRows() {
+            return savedRows;
+        }
+        
+        /**
+         * Readings with rows in failed chunks, suitable for passing back to {@code upsertBiometricBatch}.
+         * Their rows that were saved are rewritten with the same values when retried.
+         */
+        public synchronized List<BiometricData> getFailedRows() {
+            return new ArrayList<>(failedRows);
+        }
+        
+        public synchronized Throwable getLastError() {
+            return lastError;
+        }
+        
+        public synchronized boolean isSuccessful() {
+            return failedRows.isEmpty();
+        }
+    }
+    
+    private static class BiometricCodec implements RowCodec<BiometricData> {
+        private final BiometricDataAdapter adapter = new BiometricDataAdapter();
+        
+        @Override
+        public String table() {
+            return "heart_rate_readings";
+        }
+        
+        @Override
+        public String timeColumn() {
+            return "timestamp";
+        }
+        
+        @Override
+        public String[] columns() {
+            return new String[]{"timestamp", "heart_rate_bpm"};
+        }
+        
+        @Override
+        public String[] conflictColumns() {
+            return new String[]{"user_id", "timestamp"};
+        }
+        
+        @Override
+        public Map<String, Object> encode(String userId, BiometricData biometricData) {
+            Map<String, Object> dataMap = new HashMap<>();
+            dataMap.put("user_id", userId);
+            dataMap.put("timestamp", TimestampCodec.format(biometricData.getTimestamp()));
+            dataMap.put("heart_rate_bpm", biometricData.getHeartRate());
+            return dataMap;
+        }
+        
+        @Override
+        public BiometricData decode(JsonReader in, RowKey key) throws IOException {
+            return adapter.read(in, key);
+        }
+        
+        @Override
+        public void write(JsonWriter out, BiometricData value) throws IOException {
+            adapter.write(out, value);
+        }
     }
 }
-
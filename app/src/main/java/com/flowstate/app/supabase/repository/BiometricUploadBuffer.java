@@ -0,0 +1,103 @@
+package com.flowstate.app.supabase.repository;
+
+import com.flowstate.app.data.models.BiometricData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces individual biometric readings into bulk uploads.
+ *
+ * Readings are buffered and handed to {@link BiometricDataRepository#upsertBiometricBatch}
+ * when either {@code maxRows} readings are waiting or {@code maxDelayMs} has passed since
+ * the first buffered reading, whichever comes first.
+ */
+public class BiometricUploadBuffer {
+    
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "biometric-upload-buffer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final BiometricDataRepository repository;
+    private final String userId;
+    private final int maxRows;
+    private final long maxDelayMs;
+    private final BiometricDataRepository.BatchCallback callback;
+    
+    private List<BiometricData> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    
+    public BiometricUploadBuffer(BiometricDataRepository repository, String userId, int maxRows,
+                                 long maxDelayMs, BiometricDataRepository.BatchCallback callback) {
+        this.repository = repository;
+        this.userId = userId;
+        this.maxRows = maxRows;
+        this.maxDelayMs = maxDelayMs;
+        this.callback = callback;
+    }
+    
+    /**
+     * Buffer a single reading
+     */
+    public void add(BiometricData data) {
+        List<BiometricData> ready = null;
+        synchronized (this) {
+            pending.add(data);
+            if (pending.size() >= maxRows) {
+                ready = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        upload(ready);
+    }
+    
+    /**
+     * Buffer several readings at once
+     */
+    public void addAll(List<BiometricData> data) {
+        for (BiometricData item : data) {
+            add(item);
+        }
+    }
+    
+    /**
+     * Upload everything currently buffered without waiting for the size or time trigger
+     */
+    public void flush() {
+        List<BiometricData> ready;
+        synchronized (this) {
+            ready = drain();
+        }
+        upload(ready);
+    }
+    
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    private List<BiometricData> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        List<BiometricData> ready = pending;
+        pending = new ArrayList<>();
+        return ready;
+    }
+    
+    private void upload(List<BiometricData> ready) {
+        if (ready != null) {
+            repository.upsertBiometricBatch(userId, ready, callback);
+        }
+    }
+}
@@ -0,0 +1,725 @@
+package com.flowstate.app.supabase.repository;
+
+import android.content.Context;
+import com.flowstate.app.supabase.api.PostgrestQuery;
+import com.flowstate.app.supabase.http.RequestScheduler;
+import com.flowstate.app.supabase.json.IntColumnAdapter;
+import com.flowstate.app.supabase.json.RowKey;
+import com.flowstate.app.supabase.json.TimestampCodec;
+import com.flowstate.app.supabase.realtime.RealtimeClient;
+import com.flowstate.app.supabase.realtime.RowChange;
+import com.flowstate.app.supabase.sync.LocalRowStore;
+import com.flowstate.app.supabase.sync.WriteOutbox;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for repositories backed by a single PostgREST table.
+ *
+ * Handles auth headers, error extraction and decoding through the table's {@link RowCodec},
+ * and exposes an asynchronous API based on {@link CompletableFuture} so calls can be run
+ * in parallel and chained. Futures complete on the OkHttp thread unless a callback
+ * executor is configured.
+ */
+public abstract class PostgrestRepository<T> extends SupabaseRepository {
+    
+    // PostgREST's max-rows on Supabase; larger pages would be truncated silently
+    public static final int MAX_PAGE_SIZE = 1000;
+    
+    // Each delta re-reads this far behind the watermark, so rows committed slightly out of
+    // created_at order, or stamped by a skewed client clock, are not missed
+    private static final long WATERMARK_OVERLAP_MS = 5 * 60_000;
+    private static final String CREATED_AT = "created_at";
+    // How long a getLatest result answers repeat calls without a request
+    private static final long LATEST_MEMO_MS = 2_000;
+    // A first read of a range ending longer ago than this is not worth keeping a local copy for
+    private static final long LIVE_EDGE_MS = TimeUnit.DAYS.toMillis(1);
+    // Local rows are kept for the user's raw data retention, re-read at most this often
+    private static final String USER_SETTINGS = "user_settings";
+    private static final String RETENTION_COLUMN = "raw_retention_days";
+    private static final long RETENTION_MEMO_MS = TimeUnit.HOURS.toMillis(1);
+    private static final IntColumnAdapter retentionAdapter = new IntColumnAdapter(RETENTION_COLUMN);
+    
+    // Write preference, resolving against the codec's conflict columns. Only the columns a
+    // row carries are updated; the measurement tables' skip_unchanged_measurement trigger
+    // turns a replay that changes nothing into a no-op on the server.
+    protected static final String PREFER_MERGE_DUPLICATES = "resolution=merge-duplicates,return=minimal";
+    
+    protected final WriteOutbox outbox;
+    protected final RowCodec<T> codec;
+    protected final LocalRowStore localStore;
+    // Whether the projection embeds related rows, which a pushed Realtime record does not carry
+    private final boolean embedsRelations;
+    
+    protected PostgrestRepository(Context context, RowCodec<T> codec) {
+        super(context);
+        this.outbox = WriteOutbox.getInstance(context);
+        this.codec = codec;
+        this.localStore = LocalRowStore.getInstance(context);
+        this.embedsRelations = Arrays.stream(codec.columns()).anyMatch(column -> column.contains("("));
+    }
+    
+    /**
+     * Queue a row for writing. The write is recorded in the offline outbox, so the
+     * returned future completes as soon as it is stored locally.
+     */
+    public CompletableFuture<Void> insert(String userId, T value) {
+        return insertAll(userId, Collections.singletonList(value));
+    }
+    
+    /**
+     * Queue several rows for writing in one outbox transaction
+     */
+    public CompletableFuture<Void> insertAll(String userId, List<T> values) {
+        List<Map<String, Object>> rows = new ArrayList<>(values.size());
+        for (T value : values) {
+            rows.add(codec.encode(userId, value));
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            outbox.enqueueAll(codec.table(), writePrefer(), onConflict(), rows);
+            flights.invalidate(codec.table());
+            future.complete(null);
+        } catch (RuntimeException e) {
+            // SQLite failures surface as runtime exceptions
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Rows for a user within a date range, newest first.
+     * Served from the local row store after a delta sync, so loading the same range again
+     * only downloads rows created since the previous load. A range entirely before the
+     * local copy (or, before the first sync, ending more than a day ago) is read straight
+     * from the server instead, so opening an old week does not download everything since.
+     */
+    public CompletableFuture<List<T>> getRange(String userId, Date startDate, Date endDate) {
+        long start = startDate.getTime();
+        long end = endDate.getTime();
+        LocalRowStore.SyncState state = localStore.getState(codec.table(), userId);
+        boolean local = state != null
+                ? end >= state.getCoveredFrom()
+                : end >= System.currentTimeMillis() - LIVE_EDGE_MS;
+        if (!local) {
+            return selectAll(codec.table(), codec.timeColumn(), codec.columns(), userId, startDate, endDate);
+        }
+        return sync(userId, start, end).thenApply(v -> readLocal(userId, start, end));
+    }
+    
+    /**
+     * Bring the local copy of this table up to date for a user, covering rows from
+     * {@code startMillis} onwards
+     */
+    public CompletableFuture<Void> sync(String userId, long startMillis) {
+        return sync(userId, startMillis, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Bring the local copy of this table up to date for a user, for reads of rows between
+     * {@code startMillis} and {@code endMillis}.
+     *
+     * The first sync reads every row from the start time on. Later syncs fetch any older
+     * time range not held yet and, when the range reaches past the table's watermark, the
+     * rows whose created_at is past it, in parallel. Rows are merged by id, so overlapping
+     * fetches never duplicate rows. Afterwards rows older than the user's raw_retention_days
+     * are evicted, except those the range itself needs.
+     */
+    public CompletableFuture<Void> sync(String userId, long startMillis, long endMillis) {
+        // Screens opening together share one sync instead of racing on the same rows
+        return flights.execute(codec.table() + "|" + userId + "|sync|" + startMillis + "|" + endMillis, 0,
+                () -> syncNow(userId, startMillis, endMillis).thenCompose(v -> evictExpired(userId, startMillis)));
+    }
+    
+    private CompletableFuture<Void> syncNow(String userId, long startMillis, long endMillis) {
+        String table = codec.table();
+        LocalRowStore.SyncState state = localStore.getState(table, userId);
+        if (state == null) {
+            long requestedAt = System.currentTimeMillis();
+            // Open-ended so rows ahead of now, such as upcoming predictions, are covered too
+            PageCursor initial = PageCursor.byTime(userId, codec.timeColumn(), startMillis, null, true);
+            return streamPages(initial, (rows, keys) -> mergeLocal(userId, initial, rows, keys))
+                    .thenAccept(count -> localStore.updateState(table, userId, startMillis,
+                            // Nothing on the server yet; start the next delta from the local clock
+                            initial.maxCreatedAt != Long.MIN_VALUE ? initial.maxCreatedAt : requestedAt));
+        }
+        
+        long deltaFrom = state.getWatermark() - WATERMARK_OVERLAP_MS;
+        PageCursor delta = PageCursor.byCreatedAt(userId, deltaFrom);
+        // Rows created since the watermark are stamped after it too, unless backdated, so an
+        // older range does not need them
+        CompletableFuture<Integer> deltaFetch = endMillis >= deltaFrom
+                ? streamPages(delta, (rows, keys) -> mergeLocal(userId, delta, rows, keys))
+                : CompletableFuture.completedFuture(0);
+        CompletableFuture<Integer> backfill = CompletableFuture.completedFuture(0);
+        if (startMillis < state.getCoveredFrom()) {
+            PageCursor older = PageCursor.byTime(userId, codec.timeColumn(), startMillis, state.getCoveredFrom(), true);
+            backfill = streamPages(older, (rows, keys) -> mergeLocal(userId, older, rows, keys));
+        }
+        // Rows changed while watched but not re-read yet
+        List<String> staleIds = localStore.staleIds(table, userId);
+        CompletableFuture<List<T>> staleFetch = staleIds.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyList())
+                : refetch(userId, staleIds, true);
+        return deltaFetch.thenCombine(backfill, (deltaCount, backfillCount) -> {
+            localStore.updateState(table, userId, Math.min(startMillis, state.getCoveredFrom()),
+                    Math.max(state.getWatermark(), delta.maxCreatedAt));
+            return null;
+        }).thenCombine(staleFetch, (v, refetched) -> null);
+    }
+    
+    /**
+     * Drop local rows older than the user's retention setting, keeping those from
+     * {@code keepFromMillis} on for the read that is being served
+     */
+    private CompletableFuture<Void> evictExpired(String userId, long keepFromMillis) {
+        return retentionDays(userId).handle((days, error) -> {
+            // Housekeeping only; a failed settings read leaves the rows for the next sync
+            if (error == null && days != null) {
+                long cutoff = Math.min(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days), keepFromMillis);
+                localStore.evictBefore(codec.table(), userId, cutoff);
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * The user's user_settings.raw_retention_days, or null if their rows are kept indefinitely.
+     * Shared across repositories and remembered for an hour.
+     */
+    private CompletableFuture<Integer> retentionDays(String userId) {
+        PostgrestQuery query = new PostgrestQuery()
+                .select(RETENTION_COLUMN)
+                .eq("user_id", userId);
+        // No settings row, or a NULL setting, keeps everything
+        return selectFrom(USER_SETTINGS, userId, query, retentionAdapter, RETENTION_MEMO_MS)
+                .thenApply(days -> days.isEmpty() ? null : days.get(0));
+    }
+    
+    /**
+     * Stream rows for a user within a date range to {@code consumer}, newest first.
+     *
+     * Pages are fetched one after another using keyset pagination on (time column, id)
+     * and a Range header, so each request is an index range scan and memory is bounded
+     * by one page however long the range is. Pages are delivered on the callback executor,
+     * or the network thread if none is set.
+     *
+     * The future completes with the number of rows delivered. Cancelling it, or the consumer
+     * throwing, stops the stream before the next page is requested. Pages are requested at
+     * background priority, so a long stream does not delay interactive reads.
+     */
+    public CompletableFuture<Integer> stream(String userId, Date startDate, Date endDate, int pageSize,
+                                             PageConsumer<T> consumer) {
+        PageCursor cursor = PageCursor.byTime(userId, codec.timeColumn(), startDate.getTime(), endDate.getTime(), false);
+        cursor.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        cursor.priority = RequestScheduler.Priority.BACKGROUND.name();
+        return streamPages(cursor, (rows, keys) -> consumer.onPage(rows));
+    }
+    
+    /**
+     * Every row of {@code table} for a user within a date range, newest first, for tables
+     * other than the codec's whose rows the codec also decodes. Read in keyset pages like
+     * {@link #stream}, so the result is not cut off at the server's row limit; {@code filters}
+     * are applied to every page.
+     */
+    protected CompletableFuture<List<T>> selectAll(String table, String timeColumn, String[] columns, String userId,
+                                                   Date startDate, Date endDate, PostgrestQuery.Filter... filters) {
+        PageCursor cursor = PageCursor.byTime(userId, timeColumn, startDate.getTime(), endDate.getTime(), false);
+        cursor.table = table;
+        cursor.columns = columns;
+        cursor.bounds.addAll(Arrays.asList(filters));
+        List<T> rows = new ArrayList<>();
+        return streamPages(cursor, (page, keys) -> rows.addAll(page))
+                .thenApply(count -> Collections.unmodifiableList(rows));
+    }
+    
+    /**
+     * Most recent row for a user, or null if there is none.
+     * Concurrent calls share one request, and the result answers repeats for a short time.
+     */
+    public CompletableFuture<T> getLatest(String userId) {
+        PostgrestQuery query = new PostgrestQuery()
+                .select(codec.columns())
+                .eq("user_id", userId)
+                .order(codec.timeColumn(), false)
+                .limit(1);
+        return select(userId, query, LATEST_MEMO_MS).thenApply(rows -> rows.isEmpty() ? null : rows.get(0));
+    }
+    
+    /**
+     * Follow changes to a user's rows as they are committed, instead of re-reading the table.
+     *
+     * Each change pushed over Realtime is applied to the local row store, if the table has
+     * been synced for the user, and memoized reads are dropped before {@code consumer} is
+     * called, so a read it triggers already sees the change. Rows whose projection embeds
+     * related rows are read again by id instead, since a pushed record holds only the
+     * table's own columns. Cancel the returned subscription when the screen goes away.
+     */
+    public RealtimeClient.Subscription watch(String userId, ChangeConsumer<T> consumer) {
+        return supabaseClient.getRealtime().subscribe(codec.table(), userId, new RealtimeClient.ChangeListener() {
+            @Override
+            public void onChange(RowChange change) {
+                applyChange(userId, change, consumer);
+            }
+            
+            @Override
+            public void onResubscribed() {
+                flights.invalidate(codec.table());
+                dispatch(consumer::onReload);
+            }
+        });
+    }
+    
+    private void applyChange(String userId, RowChange change, ChangeConsumer<T> consumer) {
+        String table = codec.table();
+        boolean synced = localStore.getState(table, userId) != null;
+        if (change.getType() == RowChange.Type.DELETE) {
+            String id = change.getId();
+            if (id != null && synced) {
+                localStore.delete(table, userId, id);
+            }
+            flights.invalidate(table);
+            dispatch(() -> consumer.onChange(RowChange.Type.DELETE, id, null));
+            return;
+        }
+        if (embedsRelations) {
+            refetchChanged(userId, change, synced, consumer);
+            return;
+        }
+        RowKey key = new RowKey();
+        T row;
+        try {
+            row = codec.decode(new JsonReader(new StringReader(change.getRecord().toString())), key);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (row == null) {
+            return;
+        }
+        if (synced) {
+            // The watermark is left alone; the next delta re-reads the row and merges it by id
+            mergeLocal(userId, null, Collections.singletonList(row), Collections.singletonList(key));
+        }
+        flights.invalidate(table);
+        dispatch(() -> consumer.onChange(change.getType(), key.getId(), row));
+    }
+    
+    /**
+     * Handle an insert or update of a row whose projection embeds related rows. The pushed
+     * record lacks them, and they may not be written yet, so it is not merged; the local copy
+     * is marked stale and the row read again by id. If that read fails, the consumer reloads
+     * and the next sync retries the row.
+     */
+    private void refetchChanged(String userId, RowChange change, boolean synced, ChangeConsumer<T> consumer) {
+        String id = change.getId();
+        if (id == null) {
+            return;
+        }
+        if (synced) {
+            localStore.markStale(codec.table(), userId, id);
+        }
+        flights.invalidate(codec.table());
+        refetch(userId, Collections.singletonList(id), synced).whenComplete((rows, error) -> {
+            if (error != null) {
+                dispatch(consumer::onReload);
+                return;
+            }
+            for (T row : rows) {
+                dispatch(() -> consumer.onChange(change.getType(), id, row));
+            }
+        });
+    }
+    
+    /**
+     * Read rows by id with the full projection, merging them into the local row store when
+     * {@code store} is set. Requested rows that no longer come back are dropped locally.
+     */
+    private CompletableFuture<List<T>> refetch(String userId, List<String> ids, boolean store) {
+        PageCursor cursor = PageCursor.byId(userId, codec.timeColumn(), ids);
+        List<T> fetched = new ArrayList<>(ids.size());
+        Set<String> missing = new HashSet<>(ids);
+        return streamPages(cursor, (rows, keys) -> {
+            if (store) {
+                mergeLocal(userId, null, rows, keys);
+            }
+            fetched.addAll(rows);
+            for (RowKey key : keys) {
+                missing.remove(key.getId());
+            }
+        }).thenApply(count -> {
+            if (store) {
+                for (String id : missing) {
+                    localStore.delete(codec.table(), userId, id);
+                }
+            }
+            return fetched;
+        });
+    }
+    
+    /**
+     * Run a query against the codec's table and decode the response as a stream of rows.
+     * Identical concurrent selects share one request; the returned list is read-only.
+     */
+    protected CompletableFuture<List<T>> select(String userId, PostgrestQuery query) {
+        return select(userId, query, 0);
+    }
+    
+    /**
+     * As {@link #select(String, PostgrestQuery)}, also answering identical selects from
+     * the last result for up to {@code memoMillis}
+     */
+    protected CompletableFuture<List<T>> select(String userId, PostgrestQuery query, long memoMillis) {
+        Map<String, String> queryParams = query.toQueryMap();
+        String range = query.getRange();
+        // Sorted so the same query built in a different order shares the flight
+        String key = codec.table() + "|" + userId + "|" + new TreeMap<>(queryParams) + "|" + range;
+        return flights.execute(key, memoMillis, () -> fetch(queryParams, range));
+    }
+    
+    private CompletableFuture<List<T>> fetch(Map<String, String> queryParams, String range) {
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        String authorization = authorization();
+        String apikey = supabaseClient.getSupabaseAnonKey();
+        Call<ResponseBody> call = range != null
+                ? postgrestApi.selectPage(authorization, apikey, null, "items", range, codec.table(), queryParams)
+                : postgrestApi.select(authorization, apikey, codec.table(), queryParams);
+        call.enqueue(new Callback<ResponseBody>() {
+                    @Override
+                    public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                        if (!response.isSuccessful() || response.body() == null) {
+                            complete(future, null, new Exception(errorMessage(response, "Failed to fetch " + codec.table())));
+                            return;
+                        }
+                        try (ResponseBody body = response.body()) {
+                            complete(future, Collections.unmodifiableList(decodeRows(body)), null);
+                        } catch (IOException | RuntimeException e) {
+                            complete(future, null, e);
+                        }
+                    }
+                    
+                    @Override
+                    public void onFailure(Call<ResponseBody> call, Throwable t) {
+                        complete(future, null, t);
+                    }
+                });
+        return future;
+    }
+    
+    /**
+     * Call a set-returning Postgres function that reads this table and decode its rows with
+     * {@code adapter}, which returns null for rows it cannot read. Identical concurrent calls
+     * share one request and are detached by {@link #invalidateReads()}.
+     */
+    protected <R> CompletableFuture<List<R>> rpc(String function, Map<String, Object> params, TypeAdapter<R> adapter) {
+        String key = codec.table() + "|rpc/" + function + "|" + new TreeMap<>(params);
+        return flights.execute(key, 0, () -> {
+            CompletableFuture<List<R>> future = new CompletableFuture<>();
+            postgrestApi.rpc(authorization(), supabaseClient.getSupabaseAnonKey(), function, params)
+                    .enqueue(new Callback<ResponseBody>() {
+                        @Override
+                        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                            if (!response.isSuccessful() || response.body() == null) {
+                                complete(future, null, new Exception(errorMessage(response, "Failed to call " + function)));
+                                return;
+                            }
+                            try (ResponseBody body = response.body()) {
+                                complete(future, decodeArray(body, adapter), null);
+                            } catch (IOException | RuntimeException e) {
+                                complete(future, null, e);
+                            }
+                        }
+                        
+                        @Override
+                        public void onFailure(Call<ResponseBody> call, Throwable t) {
+                            complete(future, null, t);
+                        }
+                    });
+            return future;
+        });
+    }
+    
+    private CompletableFuture<Integer> streamPages(PageCursor cursor, KeyedPageConsumer<T> consumer) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        fetchPage(cursor, consumer, future);
+        return future;
+    }
+    
+    private void fetchPage(PageCursor cursor, KeyedPageConsumer<T> consumer, CompletableFuture<Integer> future) {
+        if (future.isDone()) {
+            return;
+        }
+        String table = cursor.table != null ? cursor.table : codec.table();
+        PostgrestQuery query = cursor.query(cursor.columns != null ? cursor.columns : codec.columns());
+        postgrestApi.selectPage(authorization(), supabaseClient.getSupabaseAnonKey(), cursor.priority,
+                        "items", query.getRange(), table, query.toQueryMap())
+                .enqueue(new Callback<ResponseBody>() {
+                    @Override
+                    public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                        if (!response.isSuccessful() || response.body() == null) {
+                            complete(future, null, new Exception(errorMessage(response, "Failed to fetch " + table)));
+                            return;
+                        }
+                        List<T> rows = new ArrayList<>();
+                        List<RowKey> keys = cursor.keepKeys ? new ArrayList<>() : null;
+                        int read;
+                        try (ResponseBody body = response.body()) {
+                            read = decodePage(body, rows, keys, cursor.lastKey);
+                        } catch (IOException | RuntimeException e) {
+                            complete(future, null, e);
+                            return;
+                        }
+                        dispatch(() -> {
+                            try {
+                                if (!rows.isEmpty()) {
+                                    consumer.onPage(rows, keys);
+                                }
+                            } catch (RuntimeException e) {
+                                future.completeExceptionally(e);
+                                return;
+                            }
+                            cursor.delivered += rows.size();
+                            // Undecodable rows still count towards the page, so the key keeps advancing
+                            if (read < cursor.pageSize || !cursor.hasLastKey()) {
+                                future.complete(cursor.delivered);
+                            } else {
+                                fetchPage(cursor, consumer, future);
+                            }
+                        });
+                    }
+                    
+                    @Override
+                    public void onFailure(Call<ResponseBody> call, Throwable t) {
+                        complete(future, null, t);
+                    }
+                });
+    }
+    
+    /**
+     * Store a page of fetched rows locally, tracking the newest created_at seen by the cursor
+     * if there is one
+     */
+    private void mergeLocal(String userId, PageCursor cursor, List<T> rows, List<RowKey> keys) {
+        List<String> rowIds = new ArrayList<>(rows.size());
+        List<Long> rowTimes = new ArrayList<>(rows.size());
+        List<String> payloads = new ArrayList<>(rows.size());
+        StringWriter buffer = new StringWriter();
+        for (int i = 0; i < rows.size(); i++) {
+            RowKey key = keys.get(i);
+            if (key.getId() == null || key.getTime() == null) {
+                continue;
+            }
+            buffer.getBuffer().setLength(0);
+            try {
+                codec.write(new JsonWriter(buffer), rows.get(i));
+            } catch (IOException e) {
+                // StringWriter does not throw
+                throw new IllegalStateException(e);
+            }
+            rowIds.add(key.getId());
+            rowTimes.add(TimestampCodec.parse(key.getTime()));
+            payloads.add(buffer.toString());
+            if (cursor != null && key.getCreatedAt() != null) {
+                cursor.maxCreatedAt = Math.max(cursor.maxCreatedAt, TimestampCodec.parse(key.getCreatedAt()));
+            }
+        }
+        localStore.merge(codec.table(), userId, rowIds, rowTimes, payloads);
+    }
+    
+    private List<T> readLocal(String userId, long startMillis, long endMillis) {
+        List<String> payloads = localStore.query(codec.table(), userId, startMillis, endMillis);
+        List<T> rows = new ArrayList<>(payloads.size());
+        for (String payload : payloads) {
+            try {
+                T row = codec.decode(new JsonReader(new StringReader(payload)), null);
+                if (row != null) {
+                    rows.add(row);
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return rows;
+    }
+    
+    /**
+     * How writes resolve against an existing row with the same conflict columns.
+     * Measurements can be corrected or re-sent with new values, so the latest write wins.
+     * On the server an unchanged row is left alone, so replayed outbox batches rebuild no
+     * rollups, and a changed one gets a new created_at so delta sync re-reads it.
+     */
+    protected String writePrefer() {
+        return PREFER_MERGE_DUPLICATES;
+    }
+    
+    protected String onConflict() {
+        return String.join(",", codec.conflictColumns());
+    }
+    
+    /**
+     * Drop memoized reads and detach in-flight ones for this table, after a direct write
+     */
+    protected void invalidateReads() {
+        flights.invalidate(codec.table());
+    }
+    
+    private List<T> decodeRows(ResponseBody body) throws IOException {
+        List<T> rows = new ArrayList<>();
+        decodePage(body, rows, null, null);
+        return rows;
+    }
+    
+    /**
+     * Decodes a JSON array of rows into {@code rows}, returning the number of row objects read
+     * including any the codec rejected. When {@code keys} is not null it receives a copy of
+     * each decoded row's key.
+     */
+    private int decodePage(ResponseBody body, List<T> rows, List<RowKey> keys, RowKey key) throws IOException {
+        int read = 0;
+        JsonReader reader = new JsonReader(body.charStream());
+        reader.beginArray();
+        while (reader.hasNext()) {
+            T row = codec.decode(reader, key);
+            read++;
+            // Rows the codec could not decode come back as null
+            if (row != null) {
+                rows.add(row);
+                if (keys != null) {
+                    keys.add(key.copy());
+                }
+            }
+        }
+        reader.endArray();
+        return read;
+    }
+    
+    /**
+     * Receives the pages of a streaming read, in order
+     */
+    public interface PageConsumer<T> {
+        void onPage(List<T> rows);
+    }
+    
+    /**
+     * Receives the changes followed by {@link #watch}, on the callback executor
+     */
+    public interface ChangeConsumer<T> {
+        /**
+         * A row was inserted, updated or deleted; {@code row} is null for deletes
+         */
+        void onChange(RowChange.Type type, String id, T row);
+        
+        /**
+         * Changes may have been missed while disconnected; reload what is shown
+         */
+        void onReload();
+    }
+    
+    private interface KeyedPageConsumer<T> {
+        void onPage(List<T> rows, List<RowKey> keys);
+    }
+    
+    /**
+     * Position of a paginated read. Pages after the first resume strictly after the last
+     * (key column, id) pair seen, either by time column newest first or by created_at
+     * oldest first.
+     */
+    private static class PageCursor {
+        final String userId;
+        final String keyColumn;
+        final boolean descending;
+        // Filters applied to every page
+        final List<PostgrestQuery.Filter> bounds;
+        final boolean keepKeys;
+        final RowKey lastKey = new RowKey();
+        int pageSize = MAX_PAGE_SIZE;
+        // Scheduler class for the page requests; null for the default
+        String priority;
+        // Table and projection read; null for the codec's
+        String table;
+        String[] columns;
+        int delivered;
+        long maxCreatedAt = Long.MIN_VALUE;
+        
+        private PageCursor(String userId, String keyColumn, boolean descending, List<PostgrestQuery.Filter> bounds,
+                           boolean keepKeys) {
+            this.userId = userId;
+            this.keyColumn = keyColumn;
+            this.descending = descending;
+            this.bounds = bounds;
+            this.keepKeys = keepKeys;
+        }
+        
+        /**
+         * Rows with a time in [start, end], newest first; a null end leaves the range open
+         */
+        static PageCursor byTime(String userId, String timeColumn, long startMillis, Long endMillis, boolean keepKeys) {
+            List<PostgrestQuery.Filter> bounds = new ArrayList<>(2);
+            bounds.add(PostgrestQuery.Filter.gte(timeColumn, TimestampCodec.format(startMillis)));
+            if (endMillis != null) {
+                bounds.add(PostgrestQuery.Filter.lte(timeColumn, TimestampCodec.format(endMillis)));
+            }
+            return new PageCursor(userId, timeColumn, true, bounds, keepKeys);
+        }
+        
+        /**
+         * Rows with the given ids, newest first
+         */
+        static PageCursor byId(String userId, String timeColumn, Collection<String> ids) {
+            return new PageCursor(userId, timeColumn, true, Collections.singletonList(
+                    PostgrestQuery.Filter.in("id", ids)), true);
+        }
+        
+        /**
+         * Rows created at or after {@code sinceMillis}, oldest first
+         */
+        static PageCursor byCreatedAt(String userId, long sinceMillis) {
+            return new PageCursor(userId, CREATED_AT, false, Collections.singletonList(
+                    PostgrestQuery.Filter.gte(CREATED_AT, TimestampCodec.format(sinceMillis))), true);
+        }
+        
+        boolean hasLastKey() {
+            return lastKey.getId() != null && lastValue() != null;
+        }
+        
+        private String lastValue() {
+            return CREATED_AT.equals(keyColumn) ? lastKey.getCreatedAt() : lastKey.getTime();
+        }
+        
+        /**
+         * Query for the next page, projecting {@code columns} plus the key columns
+         */
+        PostgrestQuery query(String[] columns) {
+            PostgrestQuery query = new PostgrestQuery()
+                    .select(columns)
+                    .select("id", CREATED_AT)
+                    .eq("user_id", userId);
+            for (PostgrestQuery.Filter bound : bounds) {
+                query.where(bound);
+            }
+            if (hasLastKey()) {
+                String last = lastValue();
+                query.or(descending ? PostgrestQuery.Filter.lt(keyColumn, last) : PostgrestQuery.Filter.gt(keyColumn, last),
+                        PostgrestQuery.Filter.and(PostgrestQuery.Filter.eq(keyColumn, last),
+                                descending ? PostgrestQuery.Filter.lt("id", lastKey.getId())
+                                        : PostgrestQuery.Filter.gt("id", lastKey.getId())));
+            }
+            return query
+                    .order(keyColumn, !descending)
+                    .order("id", !descending)
+                    .range(0, pageSize - 1);
+        }
+    }
+}
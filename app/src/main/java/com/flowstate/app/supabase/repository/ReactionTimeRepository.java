@@ -2,161 +2,87 @@ package com.flowstate.app.supabase.repository;
 
 import android.content.Context;
 import com.flowstate.app.data.models.ReactionTimeData;
-import com.flowstate.app.supabase.SupabaseClient;
-import com.flowstate.app.supabase.api.SupabasePostgrestApi;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import com.flowstate.app.supabase.json.ReactionTimeDataAdapter;
+import com.flowstate.app.supabase.json.RowKey;
+import com.flowstate.app.supabase.json.TimestampCodec;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
  * Repository for managing reaction time data in Supabase (Java implementation)
  */
-public class ReactionTimeRepository {
-    
-    private SupabaseClient supabaseClient;
-    private SupabasePostgrestApi postgrestApi;
-    private SimpleDateFormat dateFormat;
+public class ReactionTimeRepository extends PostgrestRepository<ReactionTimeData> {
     
     public ReactionTimeRepository(Context context) {
-        this.supabaseClient = SupabaseClient.getInstance(context);
-        this.postgrestApi = supabaseClient.getPostgrestApi();
-        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        super(context, new ReactionTimeCodec());
     }
     
     /**
-     * Insert reaction time data
+     * Insert reaction time data.
+     * The write is recorded in the offline outbox and acknowledged immediately;
+     * it is sent to Supabase in the background, surviving network loss and restarts.
      */
     public void insertReactionTimeData(String userId, ReactionTimeData reactionTimeData, DataCallback callback) {
-        Map<String, Object> dataMap = new HashMap<>();
-        dataMap.put("user_id", userId);
-        dataMap.put("timestamp", dateFormat.format(reactionTimeData.getTimestamp()));
-        dataMap.put("reaction_time_ms", reactionTimeData.getReactionTimeMs());
-        
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
-        String apikey = supabaseClient.getSupabaseAnonKey();
-        
-        postgrestApi.insertReactionTimeTest(authorization, apikey, "return=representation", dataMap)
-                .enqueue(new Callback<Void>() {
-                    @Override
-                    public void onResponse(Call<Void> call, Response<Void> response) {
-                        if (response.isSuccessful()) {
-                            callback.onSuccess(null);
-                        } else {
-                            String error = "Failed to save reaction time data";
-                            try {
-                                if (response.errorBody() != null) {
-                                    error = response.errorBody().string();
-                                }
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                            callback.onError(new Exception(error));
-                        }
-                    }
-                    
-                    @Override
-                    public void onFailure(Call<Void> call, Throwable t) {
-                        callback.onError(t);
-                    }
-                });
+        deliver(insert(userId, reactionTimeData), callback);
     }
     
     /**
      * Get reaction time data for a user within a date range
      */
     public void getReactionTimeData(String userId, Date startDate, Date endDate, DataCallback callback) {
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
-        String apikey = supabaseClient.getSupabaseAnonKey();
-        
-        Map<String, String> queryParams = new HashMap<>();
-        queryParams.put("user_id", "eq." + userId);
-        queryParams.put("timestamp", "gte." + dateFormat.format(startDate) + ",lte." + dateFormat.format(endDate));
-        queryParams.put("order", "timestamp.desc");
-        
-        postgrestApi.getReactionTimeTests(authorization, apikey, queryParams)
-                .enqueue(new Callback<List<Map<String, Object>>>() {
-                    @Override
-                    public void onResponse(Call<List<Map<String, Object>>> call, 
-                                         Response<List<Map<String, Object>>> response) {
-                        if (response.isSuccessful() && response.body() != null) {
-                            List<ReactionTimeData> reactionTimeDataList = new ArrayList<>();
-                            for (Map<String, Object> map : response.body()) {
-                                try {
-                                    Date timestamp = dateFormat.parse(map.get("timestamp").toString());
-                                    ReactionTimeData data = new ReactionTimeData(
-                                        timestamp,
-                                        ((Number) map.get("reaction_time_ms")).intValue()
-                                    );
-                                    reactionTimeDataList.add(data);
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                            callback.onSuccess(reactionTimeDataList);
-                        } else {
-                            callback.onError(new Exception("Failed to fetch reaction time data"));
-                        }
-                    }
-                    
-                    @Override
-                    public void onFailure(Call<List<Map<String, Object>>> call, Throwable t) {
-                        callback.onError(t);
-                    }
-                });
+        deliver(getRange(userId, startDate, endDate), callback);
     }
     
     /**
      * Get latest reaction time data for a user
      */
     public void getLatestReactionTimeData(String userId, DataCallback callback) {
-        String authorization = "Bearer " + supabaseClient.getAccessToken();
-        String apikey = supabaseClient.getSupabaseAnonKey();
-        
-        Map<String, String> queryParams = new HashMap<>();
-        queryParams.put("user_id", "eq." + userId);
-        queryParams.put("order", "timestamp.desc");
-        queryParams.put("limit", "1");
-        
-        postgrestApi.getReactionTimeTests(authorization, apikey, queryParams)
-                .enqueue(new Callback<List<Map<String, Object>>>() {
-                    @Override
-                    public void onResponse(Call<List<Map<String, Object>>> call, 
-                                         Response<List<Map<String, Object>>> response) {
-                        if (response.isSuccessful() && response.body() != null && !response.body().isEmpty()) {
-                            Map<String, Object> map = response.body().get(0);
-                            try {
-                                Date timestamp = dateFormat.parse(map.get("timestamp").toString());
-                                ReactionTimeData data = new ReactionTimeData(
-                                    timestamp,
-                                    ((Number) map.get("reaction_time_ms")).intValue()
-                                );
-                                callback.onSuccess(data);
-                            } catch (Exception e) {
-                                callback.onError(e);
-                            }
-                        } else {
-                            callback.onSuccess(null);
-                        }
-                    }
-                    
-                    @Override
-                    public void onFailure(Call<List<Map<String, Object>>> call, Throwable t) {
-                        callback.onError(t);
-                    }
-                });
+        deliver(getLatest(userId), callback);
     }
     
-    /**
-     * Callback interface for data operations
-     */
-    public interface DataCallback {
-        void onSuccess(Object data);
-        void onError(Throwable error);
+    private static class ReactionTimeCodec implements RowCodec<ReactionTimeData> {
+        private final ReactionTimeDataAdapter adapter = new ReactionTimeDataAdapter();
+        
+        @Override
+        public String table() {
+            return "reaction_time_tests";
+        }
+        
+        @Override
+        public String timeColumn() {
+            return "timestamp";
+        }
+        
+        @Override
+        public String[] columns() {
+            return new String[]{"timestamp", "reaction_time_ms"};
+        }
+        
+        @Override
+        public String[] conflictColumns() {
+            return new String[]{"user_id", "timestamp"};
+        }
+        
+        @Override
+        public Map<String, Object> encode(String userId, ReactionTimeData reactionTimeData) {
+            Map<String, Object> dataMap = new HashMap<>();
+            dataMap.put("user_id", userId);
+            dataMap.put("timestamp", TimestampCodec.format(reactionTimeData.getTimestamp()));
+            dataMap.put("reaction_time_ms", reactionTimeData.getReactionTimeMs());
+            return dataMap;
+        }
+        
+        @Override
+        public ReactionTimeData decode(JsonReader in, RowKey key) throws IOException {
+            return adapter.read(in, key);
+        }
+        
+        @Override
+        public void write(JsonWriter out, ReactionTimeData value) throws IOException {
+            adapter.write(out, value);
+        }
     }
 }
-
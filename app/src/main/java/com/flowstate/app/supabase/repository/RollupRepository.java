@@ -0,0 +1,93 @@
+package com.flowstate.app.supabase.repository;
+
+import android.content.Context;
+import com.flowstate.app.data.models.CognitiveRollup;
+import com.flowstate.app.data.models.HeartRateRollup;
+import com.flowstate.app.supabase.api.PostgrestQuery;
+import com.flowstate.app.supabase.json.CognitiveRollupAdapter;
+import com.flowstate.app.supabase.json.HeartRateRollupAdapter;
+import com.google.gson.TypeAdapter;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-only access to the rollup tables kept up to date by database triggers.
+ *
+ * Dashboards and weekly insights should read these instead of the raw tables: a week
+ * of heart rate is 7 daily rows or 168 hourly rows rather than every reading.
+ * Buckets are UTC hours and days; buckets without any data are absent.
+ */
+public class RollupRepository extends SupabaseRepository {
+    
+    private static final String[] HEART_RATE_COLUMNS = {
+            "reading_count", "heart_rate_mean", "heart_rate_min", "heart_rate_max"
+    };
+    private static final String[] COGNITIVE_COLUMNS = {
+            "bucket_date", "typing_test_count", "words_per_minute_mean", "accuracy_mean",
+            "reaction_test_count", "reaction_time_mean", "reaction_time_min"
+    };
+    
+    private static final HeartRateRollupAdapter heartRateAdapter = new HeartRateRollupAdapter();
+    private static final CognitiveRollupAdapter cognitiveAdapter = new CognitiveRollupAdapter();
+    
+    /**
+     * Bucket size of a heart rate rollup
+     */
+    public enum Resolution {
+        HOURLY("heart_rate_hourly", "bucket_start"),
+        DAILY("heart_rate_daily", "bucket_date");
+        
+        private final String table;
+        private final String bucketColumn;
+        
+        Resolution(String table, String bucketColumn) {
+            this.table = table;
+            this.bucketColumn = bucketColumn;
+        }
+    }
+    
+    public RollupRepository(Context context) {
+        super(context);
+    }
+    
+    /**
+     * Heart rate buckets starting in [startDate, endDate), oldest first
+     */
+    public CompletableFuture<List<HeartRateRollup>> getHeartRate(String userId, Resolution resolution,
+                                                                 Date startDate, Date endDate) {
+        String[] columns = new String[HEART_RATE_COLUMNS.length + 1];
+        columns[0] = resolution.bucketColumn;
+        System.arraycopy(HEART_RATE_COLUMNS, 0, columns, 1, HEART_RATE_COLUMNS.length);
+        return select(resolution.table, userId, resolution.bucketColumn, columns, startDate, endDate, heartRateAdapter);
+    }
+    
+    public void getHeartRate(String userId, Resolution resolution, Date startDate, Date endDate,
+                             DataCallback callback) {
+        deliver(getHeartRate(userId, resolution, startDate, endDate), callback);
+    }
+    
+    /**
+     * Daily typing and reaction time statistics for days starting in [startDate, endDate), oldest first
+     */
+    public CompletableFuture<List<CognitiveRollup>> getCognitiveDaily(String userId, Date startDate, Date endDate) {
+        return select("cognitive_daily", userId, "bucket_date", COGNITIVE_COLUMNS, startDate, endDate, cognitiveAdapter);
+    }
+    
+    public void getCognitiveDaily(String userId, Date startDate, Date endDate,
+                                  DataCallback callback) {
+        deliver(getCognitiveDaily(userId, startDate, endDate), callback);
+    }
+    
+    private <R> CompletableFuture<List<R>> select(String table, String userId, String bucketColumn, String[] columns,
+                                                  Date startDate, Date endDate, TypeAdapter<R> adapter) {
+        PostgrestQuery query = new PostgrestQuery()
+                .select(columns)
+                .eq("user_id", userId)
+                .gte(bucketColumn, startDate)
+                .lt(bucketColumn, endDate)
+                .order(bucketColumn, true);
+        return selectFrom(table, userId, query, adapter, 0);
+    }
+}
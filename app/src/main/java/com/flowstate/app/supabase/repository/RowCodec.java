@@ -0,0 +1,51 @@
+package com.flowstate.app.supabase.repository;
+
+import com.flowstate.app.supabase.json.RowKey;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Maps a model type to and from the rows of one PostgREST table
+ */
+public interface RowCodec<T> {
+    
+    /**
+     * Table the rows are stored in
+     */
+    String table();
+    
+    /**
+     * Timestamp column used for ordering and range filters
+     */
+    String timeColumn();
+    
+    /**
+     * Columns {@link #decode} reads, requested as the select projection
+     */
+    String[] columns();
+    
+    /**
+     * Columns of the table's unique constraint, sent as the on_conflict target so a
+     * replayed or duplicated write resolves against the existing row
+     */
+    String[] conflictColumns();
+    
+    /**
+     * Builds the row written for {@code value}
+     */
+    Map<String, Object> encode(String userId, T value);
+    
+    /**
+     * Reads one row object from a response stream, returning null if it cannot be decoded.
+     * When {@code key} is not null it receives the row's id and raw time value.
+     */
+    T decode(JsonReader in, RowKey key) throws IOException;
+    
+    /**
+     * Writes {@code value} in the form {@link #decode} reads, used for the local row store
+     */
+    void write(JsonWriter out, T value) throws IOException;
+}
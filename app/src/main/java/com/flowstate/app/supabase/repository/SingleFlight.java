@@ -0,0 +1,107 @@
+package com.flowstate.app.supabase.repository;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key into a single in-flight operation,
+ * optionally remembering a successful result for a short time.
+ *
+ * Keys are expected to start with the table name followed by {@code '|'}, so that
+ * {@link #invalidate(String)} can drop everything for a table after a write.
+ */
+final class SingleFlight {
+    
+    private final Map<String, CompletableFuture<Object>> inFlight = new HashMap<>();
+    private final Map<String, Memo> memos = new HashMap<>();
+    
+    /**
+     * Join the in-flight call for {@code key}, or start one with {@code call}.
+     * A result younger than {@code memoMillis} is returned without calling at all.
+     * Every caller gets its own dependent future, so one caller cancelling does not
+     * affect the others.
+     */
+    @SuppressWarnings("unchecked")
+    <V> CompletableFuture<V> execute(String key, long memoMillis, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<Object> shared;
+        boolean leader = false;
+        synchronized (this) {
+            Memo memo = memos.get(key);
+            if (memo != null) {
+                if (memo.expiresAt > System.currentTimeMillis()) {
+                    return CompletableFuture.completedFuture((V) memo.value);
+                }
+                memos.remove(key);
+            }
+            shared = inFlight.get(key);
+            if (shared == null) {
+                shared = new CompletableFuture<>();
+                inFlight.put(key, shared);
+                leader = true;
+            }
+        }
+        if (leader) {
+            start(key, memoMillis, shared, (Supplier<CompletableFuture<Object>>) (Supplier<?>) call);
+        }
+        return shared.thenApply(value -> (V) value);
+    }
+    
+    /**
+     * Forget memoized results and detach in-flight calls for a table, so the next caller
+     * reads fresh data. Detached calls still complete for the callers already waiting on
+     * them but are not memoized.
+     */
+    synchronized void invalidate(String table) {
+        String prefix = table + "|";
+        memos.keySet().removeIf(key -> key.startsWith(prefix));
+        inFlight.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+    
+    private void start(String key, long memoMillis, CompletableFuture<Object> shared,
+                       Supplier<CompletableFuture<Object>> call) {
+        CompletableFuture<Object> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((value, error) -> {
+            synchronized (this) {
+                // Only memoize if the call was not invalidated while it was running
+                if (inFlight.remove(key, shared) && error == null && memoMillis > 0) {
+                    purgeExpired();
+                    memos.put(key, new Memo(value, System.currentTimeMillis() + memoMillis));
+                }
+            }
+            if (error != null) {
+                shared.completeExceptionally(error);
+            } else {
+                shared.complete(value);
+            }
+        });
+    }
+    
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Memo> iterator = memos.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    private static class Memo {
+        final Object value;
+        final long expiresAt;
+        
+        Memo(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.flowstate.app.supabase.repository;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import com.flowstate.app.supabase.SupabaseClient;
+import com.flowstate.app.supabase.api.PostgrestQuery;
+import com.flowstate.app.supabase.api.SupabasePostgrestApi;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Plumbing shared by the PostgREST repositories: auth headers, request sharing through
+ * {@link SingleFlight}, error extraction, and completing futures on the callback executor
+ * or delivering them to a {@link DataCallback} on the main thread.
+ */
+public abstract class SupabaseRepository {
+    
+    // Shared by all repository instances, since screens create their own
+    protected static final SingleFlight flights = new SingleFlight();
+    
+    protected final SupabaseClient supabaseClient;
+    protected final SupabasePostgrestApi postgrestApi;
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile Executor callbackExecutor;
+    
+    protected SupabaseRepository(Context context) {
+        this.supabaseClient = SupabaseClient.getInstance(context);
+        this.postgrestApi = supabaseClient.getPostgrestApi();
+    }
+    
+    /**
+     * Executor futures are completed on; null (the default) completes them directly
+     * on the network thread that received the response
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+    
+    /**
+     * Run a query against any table and decode its rows with {@code adapter}, which returns
+     * null for rows it cannot read. Identical concurrent selects share one request, and the
+     * result answers repeats for up to {@code memoMillis}; the returned list is read-only.
+     */
+    protected <R> CompletableFuture<List<R>> selectFrom(String table, String userId, PostgrestQuery query,
+                                                        TypeAdapter<R> adapter, long memoMillis) {
+        Map<String, String> queryParams = query.toQueryMap();
+        String key = table + "|" + userId + "|" + new TreeMap<>(queryParams);
+        return flights.execute(key, memoMillis, () -> {
+            CompletableFuture<List<R>> future = new CompletableFuture<>();
+            postgrestApi.select(authorization(), supabaseClient.getSupabaseAnonKey(), table, queryParams)
+                    .enqueue(new Callback<ResponseBody>() {
+                        @Override
+                        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                            if (!response.isSuccessful() || response.body() == null) {
+                                complete(future, null, new Exception(errorMessage(response, "Failed to fetch " + table)));
+                                return;
+                            }
+                            try (ResponseBody body = response.body()) {
+                                complete(future, decodeArray(body, adapter), null);
+                            } catch (IOException | RuntimeException e) {
+                                complete(future, null, e);
+                            }
+                        }
+                        
+                        @Override
+                        public void onFailure(Call<ResponseBody> call, Throwable t) {
+                            complete(future, null, t);
+                        }
+                    });
+            return future;
+        });
+    }
+    
+    protected String authorization() {
+        return supabaseClient.getAuthorizationHeader();
+    }
+    
+    /**
+     * Bridges a future to the callback API, delivering on the main thread
+     */
+    protected void deliver(CompletableFuture<?> future, DataCallback callback) {
+        future.whenComplete((result, error) -> mainHandler.post(() -> {
+            if (error != null) {
+                callback.onError(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                callback.onSuccess(result);
+            }
+        }));
+    }
+    
+    protected <R> void complete(CompletableFuture<R> future, R value, Throwable error) {
+        dispatch(() -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        });
+    }
+    
+    protected void dispatch(Runnable runnable) {
+        Executor executor = callbackExecutor;
+        if (executor == null) {
+            runnable.run();
+        } else {
+            executor.execute(runnable);
+        }
+    }
+    
+    /**
+     * Decodes a JSON array with {@code adapter} into a read-only list, dropping null rows
+     */
+    static <R> List<R> decodeArray(ResponseBody body, TypeAdapter<R> adapter) throws IOException {
+        List<R> rows = new ArrayList<>();
+        JsonReader reader = new JsonReader(body.charStream());
+        reader.beginArray();
+        while (reader.hasNext()) {
+            R row = adapter.read(reader);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        reader.endArray();
+        return Collections.unmodifiableList(rows);
+    }
+    
+    protected static String errorMessage(Response<?> response, String fallback) {
+        try {
+            if (response.errorBody() != null) {
+                return response.errorBody().string();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return fallback;
+    }
+    
+    /**
+     * Callback interface for data operations
+     */
+    public interface DataCallback {
+        void onSuccess(Object data);
+        void onError(Throwable error);
+    }
+}
@@ -0,0 +1,206 @@
+package com.flowstate.app.supabase.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local copy of server rows kept up to date by delta sync.
+ *
+ * Rows are stored per table as JSON payloads keyed by their server id, so merging
+ * a re-fetched row replaces the old copy instead of duplicating it. Alongside the rows,
+ * each table and user has a {@link SyncState} recording how far back the copy reaches
+ * and the newest created_at seen, which is where the next delta starts.
+ */
+public class LocalRowStore {
+    
+    private static LocalRowStore instance;
+    
+    private final SyncDatabase database;
+    
+    private LocalRowStore(Context context) {
+        this.database = SyncDatabase.getInstance(context);
+    }
+    
+    public static synchronized LocalRowStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalRowStore(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * Sync state for a table and user, or null if it has never been synced
+     */
+    public SyncState getState(String table, String userId) {
+        try (Cursor cursor = database.getReadableDatabase().query(SyncDatabase.TABLE_SYNC_STATE,
+                new String[]{SyncDatabase.COL_COVERED_FROM, SyncDatabase.COL_WATERMARK},
+                SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ?",
+                new String[]{table, userId}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new SyncState(cursor.getLong(0), cursor.getLong(1));
+        }
+    }
+    
+    /**
+     * Record a completed sync. Coverage only ever extends backwards and the watermark only
+     * moves forwards, so syncs finishing out of order cannot lose progress.
+     */
+    public synchronized void updateState(String table, String userId, long coveredFrom, long watermark) {
+        SyncState current = getState(table, userId);
+        if (current != null) {
+            coveredFrom = Math.min(coveredFrom, current.getCoveredFrom());
+            watermark = Math.max(watermark, current.getWatermark());
+        }
+        ContentValues values = new ContentValues();
+        values.put(SyncDatabase.COL_TABLE_NAME, table);
+        values.put(SyncDatabase.COL_USER_ID, userId);
+        values.put(SyncDatabase.COL_COVERED_FROM, coveredFrom);
+        values.put(SyncDatabase.COL_WATERMARK, watermark);
+        database.getWritableDatabase().insertWithOnConflict(SyncDatabase.TABLE_SYNC_STATE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+    
+    /**
+     * Drop a user's rows with a time before {@code cutoffMillis} and move the coverage start
+     * up to it, so older ranges are no longer served locally. Returns the number of rows removed.
+     */
+    public synchronized int evictBefore(String table, String userId, long cutoffMillis) {
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int removed = db.delete(SyncDatabase.TABLE_SYNCED_ROWS,
+                    SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                            + SyncDatabase.COL_ROW_TIME + " < ?",
+                    new String[]{table, userId, Long.toString(cutoffMillis)});
+            ContentValues values = new ContentValues();
+            values.put(SyncDatabase.COL_COVERED_FROM, cutoffMillis);
+            db.update(SyncDatabase.TABLE_SYNC_STATE, values,
+                    SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                            + SyncDatabase.COL_COVERED_FROM + " < ?",
+                    new String[]{table, userId, Long.toString(cutoffMillis)});
+            db.setTransactionSuccessful();
+            return removed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    /**
+     * Insert or replace rows in one transaction, clearing any stale mark. The three lists are parallel.
+     */
+    public void merge(String table, String userId, List<String> rowIds, List<Long> rowTimes, List<String> payloads) {
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + SyncDatabase.TABLE_SYNCED_ROWS
+                    + " (" + SyncDatabase.COL_TABLE_NAME + ", " + SyncDatabase.COL_ROW_ID + ", "
+                    + SyncDatabase.COL_USER_ID + ", " + SyncDatabase.COL_ROW_TIME + ", "
+                    + SyncDatabase.COL_PAYLOAD + ") VALUES (?, ?, ?, ?, ?)");
+            for (int i = 0; i < rowIds.size(); i++) {
+                statement.bindString(1, table);
+                statement.bindString(2, rowIds.get(i));
+                statement.bindString(3, userId);
+                statement.bindLong(4, rowTimes.get(i));
+                statement.bindString(5, payloads.get(i));
+                statement.executeInsert();
+            }
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    /**
+     * Remove a row deleted on the server
+     */
+    public void delete(String table, String userId, String rowId) {
+        database.getWritableDatabase().delete(SyncDatabase.TABLE_SYNCED_ROWS,
+                SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                        + SyncDatabase.COL_ROW_ID + " = ?",
+                new String[]{table, userId, rowId});
+    }
+    
+    /**
+     * Mark a held row as changed on the server, so it is re-read until a fresh copy is merged.
+     * Rows not held locally are left alone.
+     */
+    public void markStale(String table, String userId, String rowId) {
+        ContentValues values = new ContentValues();
+        values.put(SyncDatabase.COL_STALE, 1);
+        database.getWritableDatabase().update(SyncDatabase.TABLE_SYNCED_ROWS, values,
+                SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                        + SyncDatabase.COL_ROW_ID + " = ?",
+                new String[]{table, userId, rowId});
+    }
+    
+    /**
+     * Ids of a user's rows marked stale
+     */
+    public List<String> staleIds(String table, String userId) {
+        List<String> rowIds = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().query(SyncDatabase.TABLE_SYNCED_ROWS,
+                new String[]{SyncDatabase.COL_ROW_ID},
+                SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                        + SyncDatabase.COL_STALE + " = 1",
+                new String[]{table, userId}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                rowIds.add(cursor.getString(0));
+            }
+        }
+        return rowIds;
+    }
+    
+    /**
+     * Payloads of rows within a time range, newest first
+     */
+    public List<String> query(String table, String userId, long startMillis, long endMillis) {
+        List<String> payloads = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().query(SyncDatabase.TABLE_SYNCED_ROWS,
+                new String[]{SyncDatabase.COL_PAYLOAD},
+                SyncDatabase.COL_TABLE_NAME + " = ? AND " + SyncDatabase.COL_USER_ID + " = ? AND "
+                        + SyncDatabase.COL_ROW_TIME + " BETWEEN ? AND ?",
+                new String[]{table, userId, Long.toString(startMillis), Long.toString(endMillis)},
+                null, null, SyncDatabase.COL_ROW_TIME + " DESC")) {
+            while (cursor.moveToNext()) {
+                payloads.add(cursor.getString(0));
+            }
+        }
+        return payloads;
+    }
+    
+    /**
+     * How much of a table is held locally for a user
+     */
+    public static class SyncState {
+        private final long coveredFrom;
+        private final long watermark;
+        
+        public SyncState(long coveredFrom, long watermark) {
+            this.coveredFrom = coveredFrom;
+            this.watermark = watermark;
+        }
+        
+        /**
+         * Every server row with a time at or after this instant (epoch millis) is held locally
+         */
+        public long getCoveredFrom() {
+            return coveredFrom;
+        }
+        
+        /**
+         * Newest created_at seen on the server, in epoch millis; the next delta starts here
+         */
+        public long getWatermark() {
+            return watermark;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.flowstate.app.supabase.sync;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Local SQLite database backing offline sync state
+ */
+public class SyncDatabase extends SQLiteOpenHelper {
+    
+    private static final String DATABASE_NAME = "flowstate_sync.db";
+    private static final int DATABASE_VERSION = 4;
+    
+    // Outbox of writes waiting to be sent to PostgREST, replayed in id order
+    static final String TABLE_OUTBOX = "outbox";
+    static final String COL_ID = "id";
+    static final String COL_TABLE_NAME = "table_name";
+    static final String COL_PREFER = "prefer";
+    static final String COL_ON_CONFLICT = "on_conflict";
+    static final String COL_COLUMNS = "columns";
+    static final String COL_PAYLOAD = "payload";
+    static final String COL_CREATED_AT = "created_at";
+    // 5xx responses the write has had; it is dropped after WriteOutbox.MAX_SERVER_ERRORS
+    static final String COL_ATTEMPTS = "attempts";
+    
+    // Local copies of server rows, one per (table, row id), stored as adapter JSON
+    static final String TABLE_SYNCED_ROWS = "synced_rows";
+    static final String COL_ROW_ID = "row_id";
+    static final String COL_USER_ID = "user_id";
+    static final String COL_ROW_TIME = "row_time";
+    // Set when the row changed on the server and the local copy is waiting to be re-read
+    static final String COL_STALE = "stale";
+    
+    // Per table and user: how far back the local copy reaches and the created_at high-water mark
+    static final String TABLE_SYNC_STATE = "sync_state";
+    static final String COL_COVERED_FROM = "covered_from";
+    static final String COL_WATERMARK = "watermark";
+    
+    private static SyncDatabase instance;
+    
+    private SyncDatabase(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        // WAL keeps appends cheap and lets the drain thread read while the UI thread writes
+        setWriteAheadLoggingEnabled(true);
+    }
+    
+    public static synchronized SyncDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncDatabase(context);
+        }
+        return instance;
+    }
+    
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COL_TABLE_NAME + " TEXT NOT NULL, "
+                + COL_PREFER + " TEXT, "
+                + COL_ON_CONFLICT + " TEXT, "
+                + COL_COLUMNS + " TEXT NOT NULL, "
+                + COL_PAYLOAD + " TEXT NOT NULL, "
+                + COL_CREATED_AT + " INTEGER NOT NULL, "
+                + COL_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0)");
+        createSyncTables(db);
+    }
+    
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createSyncTables(db);
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COL_ON_CONFLICT + " TEXT");
+        }
+        // Sync tables created by the upgrade to version 2 above already have the column
+        if (oldVersion >= 2 && oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_SYNCED_ROWS + " ADD COLUMN " + COL_STALE + " INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+    
+    private void createSyncTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SYNCED_ROWS + " ("
+                + COL_TABLE_NAME + " TEXT NOT NULL, "
+                + COL_ROW_ID + " TEXT NOT NULL, "
+                + COL_USER_ID + " TEXT NOT NULL, "
+                + COL_ROW_TIME + " INTEGER NOT NULL, "
+                + COL_PAYLOAD + " TEXT NOT NULL, "
+                + COL_STALE + " INTEGER NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (" + COL_TABLE_NAME + ", " + COL_ROW_ID + "))");
+        db.execSQL("CREATE INDEX idx_synced_rows_user_time ON " + TABLE_SYNCED_ROWS + " ("
+                + COL_TABLE_NAME + ", " + COL_USER_ID + ", " + COL_ROW_TIME + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COL_TABLE_NAME + " TEXT NOT NULL, "
+                + COL_USER_ID + " TEXT NOT NULL, "
+                + COL_COVERED_FROM + " INTEGER NOT NULL, "
+                + COL_WATERMARK + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COL_TABLE_NAME + ", " + COL_USER_ID + "))");
+    }
+}
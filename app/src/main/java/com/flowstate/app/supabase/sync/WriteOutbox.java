@@ -0,0 +1,362 @@
+package com.flowstate.app.supabase.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import com.flowstate.app.supabase.SupabaseClient;
+import com.flowstate.app.supabase.api.SupabasePostgrestApi;
+import com.google.gson.Gson;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable, append-only outbox for PostgREST writes.
+ *
+ * Writes are recorded in SQLite on the calling thread and acknowledged immediately.
+ * A background thread replays them in insertion order, sending consecutive writes to
+ * the same table as a single JSON-array request (one transaction on the server).
+ * Pending writes survive process death and are replayed on the next start. Writes carry
+ * an on_conflict target, so a batch that reached the server before a failure can be
+ * replayed without duplicating rows.
+ *
+ * Network errors, expired sessions and rate limits only delay the queue. A write the
+ * server keeps failing on with 5xx errors, such as a row that makes a trigger throw, is
+ * dropped after {@value #MAX_SERVER_ERRORS} attempts so it cannot block every later write.
+ *
+ * Calls to functions taking a JSON array of rows are queued the same way, one entry per
+ * array element, and consecutive calls to the same function are replayed as one request.
+ */
+public class WriteOutbox {
+    
+    private static final String TAG = "WriteOutbox";
+    private static final MediaType JSON = MediaType.get("application/json");
+    // Outbox targets with this prefix name a function rather than a table
+    private static final String RPC_PREFIX = "rpc/";
+    
+    // Max rows per replayed request
+    private static final int MAX_BATCH_ROWS = 500;
+    // Small delay so writes made in quick succession are sent together
+    private static final long DRAIN_DELAY_MS = 250;
+    private static final long MIN_BACKOFF_MS = 2_000;
+    private static final long MAX_BACKOFF_MS = 5 * 60_000;
+    // Server errors a write may get before it is treated as rejected; with backoff, over an hour
+    static final int MAX_SERVER_ERRORS = 20;
+    
+    private static WriteOutbox instance;
+    
+    private final SyncDatabase database;
+    private final SupabaseClient supabaseClient;
+    private final SupabasePostgrestApi postgrestApi;
+    private final Gson gson;
+    private final ScheduledExecutorService executor;
+    
+    private ScheduledFuture<?> scheduledDrain;
+    private long backoffMs = MIN_BACKOFF_MS;
+    // After a rejected batch, its rows are replayed one at a time up to this id to isolate the bad one
+    private long isolateUntilId = -1;
+    
+    private WriteOutbox(Context context) {
+        this.database = SyncDatabase.getInstance(context);
+        this.supabaseClient = SupabaseClient.getInstance(context);
+        this.postgrestApi = supabaseClient.getPostgrestApi();
+        this.gson = supabaseClient.getGson();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "supabase-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Replay anything left over from a previous process
+        scheduleDrain(0);
+    }
+    
+    public static synchronized WriteOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new WriteOutbox(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * Record a single row write for {@code table}
+     */
+    public void enqueue(String table, String prefer, String onConflict, Map<String, Object> row) {
+        List<Map<String, Object>> rows = new ArrayList<>(1);
+        rows.add(row);
+        enqueueAll(table, prefer, onConflict, rows);
+    }
+    
+    /**
+     * Record several row writes for {@code table} atomically
+     */
+    public void enqueueAll(String table, String prefer, String onConflict, List<Map<String, Object>> rows) {
+        record(table, prefer, onConflict, rows, true);
+    }
+    
+    /**
+     * Record a call to {@code function}, whose single argument is the JSON array of
+     * {@code rows}, atomically. The function must accept any number of rows, and
+     * resolve repeated ones itself, since queued calls are merged and may be replayed.
+     */
+    public void enqueueRpc(String function, List<Map<String, Object>> rows) {
+        record(RPC_PREFIX + function, null, null, rows, false);
+    }
+    
+    private void record(String target, String prefer, String onConflict, List<Map<String, Object>> rows,
+                        boolean groupByColumns) {
+        SQLiteDatabase db = database.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Map<String, Object> row : rows) {
+                values.clear();
+                values.put(SyncDatabase.COL_TABLE_NAME, target);
+                values.put(SyncDatabase.COL_PREFER, prefer);
+                values.put(SyncDatabase.COL_ON_CONFLICT, onConflict);
+                // A function reads each row's keys itself, so any rows may share a call
+                values.put(SyncDatabase.COL_COLUMNS, groupByColumns ? columnsOf(row) : "");
+                values.put(SyncDatabase.COL_PAYLOAD, gson.toJson(row));
+                values.put(SyncDatabase.COL_CREATED_AT, now);
+                db.insertOrThrow(SyncDatabase.TABLE_OUTBOX, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        scheduleDrain(DRAIN_DELAY_MS);
+    }
+    
+    /**
+     * Number of writes not yet acknowledged by the server
+     */
+    public long getPendingCount() {
+        return DatabaseUtils.queryNumEntries(database.getReadableDatabase(), SyncDatabase.TABLE_OUTBOX);
+    }
+    
+    /**
+     * Start replaying pending writes now, e.g. after sign-in or when connectivity returns
+     */
+    public void drain() {
+        synchronized (this) {
+            backoffMs = MIN_BACKOFF_MS;
+        }
+        scheduleDrain(0);
+    }
+    
+    private synchronized void scheduleDrain(long delayMs) {
+        if (scheduledDrain != null && !scheduledDrain.isDone()) {
+            if (scheduledDrain.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrain = executor.schedule(this::drainPending, delayMs, TimeUnit.MILLISECONDS);
+    }
+    
+    private void drainPending() {
+        if (!supabaseClient.isAuthenticated()) {
+            // Nothing can be sent without a session; drain() is called again after sign-in
+            return;
+        }
+        // Renew a nearly expired session up front rather than taking a 401 per batch
+        supabaseClient.getTokenRefresher().ensureFresh();
+        while (true) {
+            Batch batch = readNextBatch();
+            if (batch == null) {
+                synchronized (this) {
+                    backoffMs = MIN_BACKOFF_MS;
+                }
+                return;
+            }
+            if (!send(batch)) {
+                long delay;
+                synchronized (this) {
+                    delay = backoffMs;
+                    backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                }
+                scheduleDrain(delay);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Reads the longest run of writes at the head of the outbox that can share one request
+     */
+    private Batch readNextBatch() {
+        int limit;
+        synchronized (this) {
+            limit = isolateUntilId >= 0 ? 1 : MAX_BATCH_ROWS;
+        }
+        SQLiteDatabase db = database.getReadableDatabase();
+        try (Cursor cursor = db.query(SyncDatabase.TABLE_OUTBOX,
+                new String[]{SyncDatabase.COL_ID, SyncDatabase.COL_TABLE_NAME, SyncDatabase.COL_PREFER,
+                        SyncDatabase.COL_ON_CONFLICT, SyncDatabase.COL_COLUMNS, SyncDatabase.COL_PAYLOAD,
+                        SyncDatabase.COL_ATTEMPTS},
+                null, null, null, null, SyncDatabase.COL_ID + " ASC", String.valueOf(limit))) {
+            Batch batch = null;
+            while (cursor.moveToNext()) {
+                String table = cursor.getString(1);
+                String prefer = cursor.getString(2);
+                String onConflict = cursor.getString(3);
+                String columns = cursor.getString(4);
+                if (batch == null) {
+                    batch = new Batch(table, prefer, onConflict, columns);
+                    // Every row of a failed batch is counted, so the head has the highest count
+                    batch.attempts = cursor.getInt(6);
+                } else if (!batch.accepts(table, prefer, onConflict, columns)) {
+                    break;
+                }
+                batch.lastId = cursor.getLong(0);
+                batch.payloads.add(cursor.getString(5));
+            }
+            return batch;
+        }
+    }
+    
+    /**
+     * Sends one batch, returning false if the drain should back off and try again later
+     */
+    private boolean send(Batch batch) {
+        StringBuilder body = new StringBuilder(batch.payloads.size() * 128);
+        body.append('[');
+        for (int i = 0; i < batch.payloads.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(batch.payloads.get(i));
+        }
+        body.append(']');
+        
+        String authorization = supabaseClient.getAuthorizationHeader();
+        String apikey = supabaseClient.getSupabaseAnonKey();
+        try {
+            RequestBody rows = RequestBody.create(body.toString(), JSON);
+            Response<Void> response = batch.table.startsWith(RPC_PREFIX)
+                    ? postgrestApi.rpcRows(authorization, apikey, batch.table.substring(RPC_PREFIX.length()), rows).execute()
+                    : postgrestApi.insertRows(authorization, apikey, batch.prefer, batch.onConflict, batch.table, rows).execute();
+            if (response.isSuccessful()) {
+                remove(batch.lastId);
+                return true;
+            }
+            int code = response.code();
+            if (code == 401 || code == 408 || code == 429) {
+                return false;
+            }
+            if (code >= 500 && batch.attempts + 1 < MAX_SERVER_ERRORS) {
+                recordAttempt(batch.lastId);
+                return false;
+            }
+            String error = response.errorBody() != null ? response.errorBody().string() : "HTTP " + code;
+            if (code >= 500 && batch.payloads.size() > 1) {
+                // Persistent server errors; give each row its own attempts to find the one causing them
+                resetAttempts(batch.lastId);
+                synchronized (this) {
+                    isolateUntilId = batch.lastId;
+                }
+                Log.w(TAG, "Batch for " + batch.table + " keeps failing, isolating rows: " + error);
+                return false;
+            }
+            if (batch.payloads.size() > 1) {
+                // The server rejects the whole statement; replay row by row to find the culprit
+                synchronized (this) {
+                    isolateUntilId = batch.lastId;
+                }
+                Log.w(TAG, "Batch for " + batch.table + " rejected, isolating rows: " + error);
+            } else {
+                // A single row the server will never accept; drop it so the queue can progress
+                Log.e(TAG, "Dropping rejected write for " + batch.table + ": " + error);
+                remove(batch.lastId);
+            }
+            return true;
+        } catch (IOException e) {
+            // Usually no connection; not counted, so writes made offline are never dropped
+            Log.w(TAG, "Outbox drain failed, will retry", e);
+            return false;
+        }
+    }
+    
+    private void remove(long upToId) {
+        // Batches are always taken from the head, so everything up to lastId has been sent
+        database.getWritableDatabase().delete(SyncDatabase.TABLE_OUTBOX,
+                SyncDatabase.COL_ID + " <= ?", new String[]{String.valueOf(upToId)});
+        synchronized (this) {
+            if (upToId >= isolateUntilId) {
+                isolateUntilId = -1;
+            }
+        }
+    }
+    
+    private void recordAttempt(long upToId) {
+        database.getWritableDatabase().execSQL("UPDATE " + SyncDatabase.TABLE_OUTBOX
+                        + " SET " + SyncDatabase.COL_ATTEMPTS + " = " + SyncDatabase.COL_ATTEMPTS + " + 1"
+                        + " WHERE " + SyncDatabase.COL_ID + " <= ?",
+                new Object[]{upToId});
+    }
+    
+    private void resetAttempts(long upToId) {
+        ContentValues values = new ContentValues();
+        values.put(SyncDatabase.COL_ATTEMPTS, 0);
+        database.getWritableDatabase().update(SyncDatabase.TABLE_OUTBOX, values,
+                SyncDatabase.COL_ID + " <= ?", new String[]{String.valueOf(upToId)});
+    }
+    
+    /**
+     * PostgREST derives bulk insert columns from the first element, so only rows with
+     * identical key sets may share a request
+     */
+    private static String columnsOf(Map<String, Object> row) {
+        StringBuilder columns = new StringBuilder();
+        for (String key : new TreeSet<>(row.keySet())) {
+            if (row.get(key) == null) {
+                continue;
+            }
+            if (columns.length() > 0) {
+                columns.append(',');
+            }
+            columns.append(key);
+        }
+        return columns.toString();
+    }
+    
+    private static boolean equalsNullable(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    private static class Batch {
+        final String table;
+        final String prefer;
+        final String onConflict;
+        final String columns;
+        final List<String> payloads = new ArrayList<>();
+        long lastId;
+        // Server errors the head row has had so far
+        int attempts;
+        
+        Batch(String table, String prefer, String onConflict, String columns) {
+            this.table = table;
+            this.prefer = prefer;
+            this.onConflict = onConflict;
+            this.columns = columns;
+        }
+        
+        boolean accepts(String table, String prefer, String onConflict, String columns) {
+            return this.table.equals(table) && equalsNullable(this.prefer, prefer)
+                    && equalsNullable(this.onConflict, onConflict) && this.columns.equals(columns);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.flowstate.app;
 
 import android.app.Application;
 import com.flowstate.app.supabase.SupabaseClient;
+import com.flowstate.app.supabase.sync.WriteOutbox;
 
 public class EnergyPredictorApplication extends Application {
     @Override
@@ -9,6 +10,8 @@ public class EnergyPredictorApplication extends Application {
         super.onCreate();
         // Initialize Supabase client
         SupabaseClient.getInstance(this);
+        // Replay writes that were still queued when the process last exited
+        WriteOutbox.getInstance(this);
     }
 }
 
@@ -6,11 +6,15 @@ import com.google.android.gms.auth.api.signin.GoogleSignIn;
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.android.gms.fitness.Fitness;
 import com.google.android.gms.fitness.FitnessOptions;
+import com.google.android.gms.fitness.data.Bucket;
+import com.google.android.gms.fitness.data.DataPoint;
+import com.google.android.gms.fitness.data.DataSet;
 import com.google.android.gms.fitness.data.DataType;
 import com.google.android.gms.fitness.data.Field;
 import com.google.android.gms.fitness.request.DataReadRequest;
 import com.google.android.gms.fitness.result.DataReadResponse;
 import com.flowstate.app.data.models.BiometricData;
+import com.flowstate.app.data.models.HourlyBiometrics;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -67,6 +71,98 @@ public class GoogleFitManager {
         }
     }
 
+    /**
+     * Read heart rate and sleep for the last {@code hours} as hourly buckets, oldest first.
+     * Heart rate is aggregated by Google Fit, so only one summary per hour is downloaded
+     * rather than every reading. The window starts on the hour, so the hour that only
+     * partly overlaps it is included whole. Hours without data are omitted.
+     */
+    public void readHourlyBiometrics(int hours, HourlyCallback callback) {
+        long endTime = Calendar.getInstance().getTimeInMillis();
+        long startTime = endTime - TimeUnit.HOURS.toMillis(hours);
+        startTime -= startTime % TimeUnit.HOURS.toMillis(1);
+
+        GoogleSignInAccount account = GoogleSignIn.getLastSignedInAccount(context);
+        if (account == null) {
+            callback.onError(new Exception("Not signed in to Google Fit. Please connect first."));
+            return;
+        }
+
+        // Sleep quality comes from each segment's length, so segments are read whole, not aggregated
+        DataReadRequest heartRateRequest = new DataReadRequest.Builder()
+                .aggregate(DataType.TYPE_HEART_RATE_BPM)
+                .bucketByTime(1, TimeUnit.HOURS)
+                .setTimeRange(startTime, endTime, TimeUnit.MILLISECONDS)
+                .enableServerQueries()
+                .build();
+        DataReadRequest sleepRequest = new DataReadRequest.Builder()
+                .read(DataType.TYPE_SLEEP_SEGMENT)
+                .setTimeRange(startTime, endTime, TimeUnit.MILLISECONDS)
+                .enableServerQueries()
+                .build();
+
+        try {
+            Fitness.getHistoryClient(context, account)
+                    .readData(heartRateRequest)
+                    .addOnSuccessListener(heartRate -> Fitness.getHistoryClient(context, account)
+                            .readData(sleepRequest)
+                            .addOnSuccessListener(sleep -> callback.onSuccess(parseHourlyData(heartRate, sleep)))
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Failed to read sleep data", e);
+                                callback.onError(e);
+                            }))
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to read hourly heart rate", e);
+                        callback.onError(e);
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Exception reading hourly biometric data", e);
+            callback.onError(e);
+        }
+    }
+
+    private List<HourlyBiometrics> parseHourlyData(DataReadResponse heartRate, DataReadResponse sleep) {
+        long hourMs = TimeUnit.HOURS.toMillis(1);
+        Map<Long, HourlyBiometrics> hours = new TreeMap<>();
+
+        for (Bucket bucket : heartRate.getBuckets()) {
+            DataSet summary = bucket.getDataSet(DataType.AGGREGATE_HEART_RATE_SUMMARY);
+            if (summary == null || summary.isEmpty()) {
+                continue;
+            }
+            DataPoint point = summary.getDataPoints().get(0);
+            long bucketStart = bucket.getStartTime(TimeUnit.MILLISECONDS);
+            HourlyBiometrics hour = new HourlyBiometrics(new Date(bucketStart));
+            // The summary carries no reading count, so each hour with readings counts once
+            hour.setHeartRateCount(1);
+            hour.setHeartRateMean((double) point.getValue(Field.FIELD_AVERAGE).asFloat());
+            hour.setHeartRateMin(Math.round(point.getValue(Field.FIELD_MIN).asFloat()));
+            hour.setHeartRateMax(Math.round(point.getValue(Field.FIELD_MAX).asFloat()));
+            hours.put(bucketStart, hour);
+        }
+
+        DataSet segments = sleep.getDataSet(DataType.TYPE_SLEEP_SEGMENT);
+        if (segments != null) {
+            for (DataPoint dataPoint : segments.getDataPoints()) {
+                long startTimeMs = dataPoint.getStartTime(TimeUnit.MILLISECONDS);
+                long endTimeMs = dataPoint.getEndTime(TimeUnit.MILLISECONDS);
+                double quality = sleepQuality((int) ((endTimeMs - startTimeMs) / 60000));
+
+                // Counted in the hour the segment starts, as the raw readings are
+                long bucketStart = startTimeMs - startTimeMs % hourMs;
+                HourlyBiometrics hour = hours.computeIfAbsent(bucketStart, start -> new HourlyBiometrics(new Date(start)));
+                int count = hour.getSleepQualityCount();
+                double mean = hour.getSleepQualityMean() != null ? hour.getSleepQualityMean() : 0;
+                hour.setSleepQualityMean((mean * count + quality) / (count + 1));
+                hour.setSleepQualityMin(hour.getSleepQualityMin() != null ? Math.min(hour.getSleepQualityMin(), quality) : quality);
+                hour.setSleepQualityMax(hour.getSleepQualityMax() != null ? Math.max(hour.getSleepQualityMax(), quality) : quality);
+                hour.setSleepQualityCount(count + 1);
+            }
+        }
+
+        return new ArrayList<>(hours.values());
+    }
+
     private List<BiometricData> parseCombinedData(DataReadResponse response, long startTime, long endTime) {
         List<BiometricData> list = new ArrayList<>();
         Map<Long, BiometricData> combined = new HashMap<>();
@@ -90,12 +186,7 @@ public class GoogleFitManager {
                 long startTimeMs = dataPoint.getStartTime(TimeUnit.MILLISECONDS);
                 long endTimeMs = dataPoint.getEndTime(TimeUnit.MILLISECONDS);
                 int durationMinutes = (int) ((endTimeMs - startTimeMs) / 60000);
-                
-                double quality;
-                if (durationMinutes < 360) quality = 0.3;
-                else if (durationMinutes < 480) quality = 0.6;
-                else if (durationMinutes < 600) quality = 0.9;
-                else quality = 0.7;
+                double quality = sleepQuality(durationMinutes);
                 
                 Date timestamp = new Date(startTimeMs);
                 long timeKey = startTimeMs;
@@ -112,6 +203,16 @@ public class GoogleFitManager {
         return list;
     }
 
+    /**
+     * Rough sleep quality from a segment's length, 0.0 to 1.0
+     */
+    private static double sleepQuality(int durationMinutes) {
+        if (durationMinutes < 360) return 0.3;
+        else if (durationMinutes < 480) return 0.6;
+        else if (durationMinutes < 600) return 0.9;
+        else return 0.7;
+    }
+
     public void requestFitnessPermission(GoogleSignInAccount account) {
         if (account == null) {
             Log.e(TAG, "Cannot request permissions: account is null");
@@ -128,5 +229,10 @@ public class GoogleFitManager {
         void onSuccess(List<BiometricData> data);
         void onError(Exception e);
     }
+
+    public interface HourlyCallback {
+        void onSuccess(List<HourlyBiometrics> data);
+        void onError(Exception e);
+    }
 }
 
@@ -0,0 +1,78 @@
+package com.flowstate.app.data.models;
+
+import java.util.Date;
+
+/**
+ * Typing and reaction time test statistics for one day, read from the cognitive_daily
+ * rollup table. Means are null when no test of that kind was taken that day.
+ */
+public class CognitiveRollup {
+    private Date date; // start of the UTC day
+    private int typingTestCount;
+    private Double wordsPerMinuteMean;
+    private Double accuracyMean; // percentage
+    private int reactionTestCount;
+    private Double reactionTimeMean; // milliseconds
+    private Integer reactionTimeMin;
+
+    public CognitiveRollup(Date date) {
+        this.date = date;
+    }
+
+    // Getters and Setters
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public int getTypingTestCount() {
+        return typingTestCount;
+    }
+
+    public void setTypingTestCount(int typingTestCount) {
+        this.typingTestCount = typingTestCount;
+    }
+
+    public Double getWordsPerMinuteMean() {
+        return wordsPerMinuteMean;
+    }
+
+    public void setWordsPerMinuteMean(Double wordsPerMinuteMean) {
+        this.wordsPerMinuteMean = wordsPerMinuteMean;
+    }
+
+    public Double getAccuracyMean() {
+        return accuracyMean;
+    }
+
+    public void setAccuracyMean(Double accuracyMean) {
+        this.accuracyMean = accuracyMean;
+    }
+
+    public int getReactionTestCount() {
+        return reactionTestCount;
+    }
+
+    public void setReactionTestCount(int reactionTestCount) {
+        this.reactionTestCount = reactionTestCount;
+    }
+
+    public Double getReactionTimeMean() {
+        return reactionTimeMean;
+    }
+
+    public void setReactionTimeMean(Double reactionTimeMean) {
+        this.reactionTimeMean = reactionTimeMean;
+    }
+
+    public Integer getReactionTimeMin() {
+        return reactionTimeMin;
+    }
+
+    public void setReactionTimeMin(Integer reactionTimeMin) {
+        this.reactionTimeMin = reactionTimeMin;
+    }
+}
@@ -0,0 +1,64 @@
+package com.flowstate.app.data.models;
+
+import java.util.Date;
+
+/**
+ * Heart rate statistics for one hour or day, read from the heart_rate_hourly
+ * and heart_rate_daily rollup tables
+ */
+public class HeartRateRollup {
+    private Date bucketStart; // start of the UTC hour or day
+    private int readingCount;
+    private double mean; // bpm
+    private int min;
+    private int max;
+
+    public HeartRateRollup(Date bucketStart, int readingCount, double mean, int min, int max) {
+        this.bucketStart = bucketStart;
+        this.readingCount = readingCount;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+    }
+
+    // Getters and Setters
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Date bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getReadingCount() {
+        return readingCount;
+    }
+
+    public void setReadingCount(int readingCount) {
+        this.readingCount = readingCount;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public void setMin(int min) {
+        this.min = min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public void setMax(int max) {
+        this.max = max;
+    }
+}
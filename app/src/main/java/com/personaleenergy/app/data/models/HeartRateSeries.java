@@ -0,0 +1,67 @@
+package com.flowstate.app.data.models;
+
+import java.util.Arrays;
+
+/**
+ * Heart rate readings held as primitive columns, oldest first. Used for exports
+ * spanning months, where one object per reading would cost far more memory.
+ */
+public class HeartRateSeries {
+    private long[] timestamps; // epoch millis
+    private int[] heartRates; // bpm
+    private int size;
+
+    public HeartRateSeries() {
+        this(1024);
+    }
+
+    public HeartRateSeries(int capacity) {
+        this.timestamps = new long[Math.max(capacity, 16)];
+        this.heartRates = new int[timestamps.length];
+    }
+
+    public void add(long timestamp, int heartRate) {
+        if (size == timestamps.length) {
+            int capacity = size + (size >> 1);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            heartRates = Arrays.copyOf(heartRates, capacity);
+        }
+        timestamps[size] = timestamp;
+        heartRates[size] = heartRate;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public int getHeartRate(int index) {
+        checkIndex(index);
+        return heartRates[index];
+    }
+
+    /**
+     * Copy of the timestamp column, trimmed to {@link #size()}
+     */
+    public long[] getTimestamps() {
+        return Arrays.copyOf(timestamps, size);
+    }
+
+    /**
+     * Copy of the heart rate column, trimmed to {@link #size()}
+     */
+    public int[] getHeartRates() {
+        return Arrays.copyOf(heartRates, size);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+}
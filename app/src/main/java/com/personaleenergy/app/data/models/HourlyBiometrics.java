@@ -0,0 +1,96 @@
+package com.flowstate.app.data.models;
+
+import java.util.Date;
+
+/**
+ * One hour of aggregated biometric readings, as returned by the hourly_biometrics RPC.
+ * Statistics are null when the hour has no readings of that kind.
+ */
+public class HourlyBiometrics {
+    private Date bucketStart;
+    private int heartRateCount;
+    private Double heartRateMean; // bpm
+    private Integer heartRateMin;
+    private Integer heartRateMax;
+    private int sleepQualityCount;
+    private Double sleepQualityMean; // 0.0 to 1.0
+    private Double sleepQualityMin;
+    private Double sleepQualityMax;
+
+    public HourlyBiometrics(Date bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    // Getters and Setters
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Date bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getHeartRateCount() {
+        return heartRateCount;
+    }
+
+    public void setHeartRateCount(int heartRateCount) {
+        this.heartRateCount = heartRateCount;
+    }
+
+    public Double getHeartRateMean() {
+        return heartRateMean;
+    }
+
+    public void setHeartRateMean(Double heartRateMean) {
+        this.heartRateMean = heartRateMean;
+    }
+
+    public Integer getHeartRateMin() {
+        return heartRateMin;
+    }
+
+    public void setHeartRateMin(Integer heartRateMin) {
+        this.heartRateMin = heartRateMin;
+    }
+
+    public Integer getHeartRateMax() {
+        return heartRateMax;
+    }
+
+    public void setHeartRateMax(Integer heartRateMax) {
+        this.heartRateMax = heartRateMax;
+    }
+
+    public int getSleepQualityCount() {
+        return sleepQualityCount;
+    }
+
+    public void setSleepQualityCount(int sleepQualityCount) {
+        this.sleepQualityCount = sleepQualityCount;
+    }
+
+    public Double getSleepQualityMean() {
+        return sleepQualityMean;
+    }
+
+    public void setSleepQualityMean(Double sleepQualityMean) {
+        this.sleepQualityMean = sleepQualityMean;
+    }
+
+    public Double getSleepQualityMin() {
+        return sleepQualityMin;
+    }
+
+    public void setSleepQualityMin(Double sleepQualityMin) {
+        this.sleepQualityMin = sleepQualityMin;
+    }
+
+    public Double getSleepQualityMax() {
+        return sleepQualityMax;
+    }
+
+    public void setSleepQualityMax(Double sleepQualityMax) {
+        this.sleepQualityMax = sleepQualityMax;
+    }
+}
@@ -3,6 +3,7 @@ package com.personaleenergy.app.ml;
 import com.flowstate.app.data.models.EnergyLevel;
 import com.flowstate.app.data.models.EnergyPrediction;
 import com.flowstate.app.data.models.BiometricData;
+import com.flowstate.app.data.models.HourlyBiometrics;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,6 +36,41 @@ public class EnergyPredictor {
         return predictions;
     }
     
+    /**
+     * Same predictions as {@link #predictEnergyLevels}, from hourly aggregates such as those
+     * from GoogleFitManager.readHourlyBiometrics or the hourly_biometrics RPC instead of raw readings
+     */
+    public List<EnergyPrediction> predictEnergyLevelsFromHourly(
+            List<HourlyBiometrics> hourlyData,
+            int hours) {
+        
+        List<EnergyPrediction> predictions = new ArrayList<>();
+        
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < hours; i++) {
+            Date timestamp = calendar.getTime();
+            List<HourlyBiometrics> recent = getRecentHours(hourlyData, timestamp, 24);
+            EnergyLevel level = recent.isEmpty() ? EnergyLevel.MEDIUM
+                    : levelFor(getHour(timestamp), meanHeartRate(recent), meanSleepQuality(recent));
+            double confidence = calculateHourlyConfidence(hourlyData);
+            
+            Map<String, Double> bioFactors = new HashMap<>();
+            Double heartRate = meanHeartRate(hourlyData);
+            if (heartRate != null) {
+                bioFactors.put("heartRate", heartRate);
+            }
+            Double sleepQuality = meanSleepQuality(hourlyData);
+            if (sleepQuality != null) {
+                bioFactors.put("sleepQuality", sleepQuality);
+            }
+            
+            predictions.add(new EnergyPrediction(timestamp, level, confidence, bioFactors, new HashMap<>()));
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+        }
+        
+        return predictions;
+    }
+    
     private EnergyLevel predictForTime(Date timestamp, List<BiometricData> biometricData) {
         // Simple heuristic-based prediction
         // Find most recent data points
@@ -44,25 +80,18 @@ public class EnergyPredictor {
             return EnergyLevel.MEDIUM;
         }
         
-        double energyScore = 0.0;
-        int hourOfDay = getHour(timestamp);
-        
         // Heart rate analysis
         List<Integer> heartRates = recent.stream()
                 .map(BiometricData::getHeartRate)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
         
+        Double avgHeartRate = null;
         if (!heartRates.isEmpty()) {
-            double avgHeartRate = heartRates.stream()
+            avgHeartRate = heartRates.stream()
                     .mapToInt(Integer::intValue)
                     .average()
                     .orElse(70);
-            
-            // Resting heart rate ~60-100 bpm is normal
-            if (avgHeartRate < 60) energyScore += 0.2; // too low
-            else if (avgHeartRate < 80) energyScore += 0.7; // good
-            else energyScore += 0.3; // elevated
         }
         
         // Sleep analysis
@@ -70,11 +99,31 @@ public class EnergyPredictor {
                 .filter(d -> d.getSleepQuality() != null)
                 .collect(Collectors.toList());
         
+        Double avgSleepQuality = null;
         if (!sleepData.isEmpty()) {
-            double avgSleepQuality = sleepData.stream()
+            avgSleepQuality = sleepData.stream()
                     .mapToDouble(BiometricData::getSleepQuality)
                     .average()
                     .orElse(0.5);
+        }
+        
+        return levelFor(getHour(timestamp), avgHeartRate, avgSleepQuality);
+    }
+    
+    /**
+     * Scores the averages of the last 24 hours, either of which may be null if unknown
+     */
+    private EnergyLevel levelFor(int hourOfDay, Double avgHeartRate, Double avgSleepQuality) {
+        double energyScore = 0.0;
+        
+        if (avgHeartRate != null) {
+            // Resting heart rate ~60-100 bpm is normal
+            if (avgHeartRate < 60) energyScore += 0.2; // too low
+            else if (avgHeartRate < 80) energyScore += 0.7; // good
+            else energyScore += 0.3; // elevated
+        }
+        
+        if (avgSleepQuality != null) {
             energyScore += avgSleepQuality * 0.5;
         }
         
@@ -104,6 +153,51 @@ public class EnergyPredictor {
         return Math.min(0.7 + (recentCount * 0.1), 1.0);
     }
     
+    private double calculateHourlyConfidence(List<HourlyBiometrics> hourlyData) {
+        if (hourlyData.isEmpty()) return 0.3;
+        
+        long cutoff = System.currentTimeMillis() - 24L * 60 * 60 * 1000;
+        long recentCount = 0;
+        for (HourlyBiometrics hour : hourlyData) {
+            // Buckets start on the hour, so count any bucket overlapping the last 24 hours
+            if (hour.getBucketStart().getTime() + 60 * 60 * 1000 > cutoff) {
+                recentCount += hour.getHeartRateCount() + hour.getSleepQualityCount();
+            }
+        }
+        
+        return Math.min(0.7 + (recentCount * 0.1), 1.0);
+    }
+    
+    /**
+     * Mean heart rate across hours, weighted by each hour's reading count
+     */
+    private Double meanHeartRate(List<HourlyBiometrics> hourlyData) {
+        double sum = 0;
+        long count = 0;
+        for (HourlyBiometrics hour : hourlyData) {
+            if (hour.getHeartRateMean() != null && hour.getHeartRateCount() > 0) {
+                sum += hour.getHeartRateMean() * hour.getHeartRateCount();
+                count += hour.getHeartRateCount();
+            }
+        }
+        return count > 0 ? sum / count : null;
+    }
+    
+    /**
+     * Mean sleep quality across hours, weighted by each hour's session count
+     */
+    private Double meanSleepQuality(List<HourlyBiometrics> hourlyData) {
+        double sum = 0;
+        long count = 0;
+        for (HourlyBiometrics hour : hourlyData) {
+            if (hour.getSleepQualityMean() != null && hour.getSleepQualityCount() > 0) {
+                sum += hour.getSleepQualityMean() * hour.getSleepQualityCount();
+                count += hour.getSleepQualityCount();
+            }
+        }
+        return count > 0 ? sum / count : null;
+    }
+    
     private Map<String, Double> extractBiometricFactors(List<BiometricData> biometricData) {
         Map<String, Double> factors = new HashMap<>();
         
@@ -143,6 +237,14 @@ public class EnergyPredictor {
                 .collect(Collectors.toList());
     }
     
+    private List<HourlyBiometrics> getRecentHours(List<HourlyBiometrics> data, Date timestamp, int hours) {
+        long cutoff = timestamp.getTime() - (hours * 60 * 60 * 1000);
+        // Include the bucket that starts before the cutoff but still overlaps the window
+        return data.stream()
+                .filter(d -> d.getBucketStart().getTime() + 60 * 60 * 1000 > cutoff)
+                .collect(Collectors.toList());
+    }
+    
     private int getHour(Date timestamp) {
         Calendar cal = Calendar.getInstance();
         cal.setTime(timestamp);
@@ -6,8 +6,8 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import com.flowstate.app.R;
 import com.personaleenergy.app.data.collection.GoogleFitManager;
-import com.flowstate.app.data.models.BiometricData;
 import com.flowstate.app.data.models.EnergyPrediction;
+import com.flowstate.app.data.models.HourlyBiometrics;
 import com.flowstate.app.data.models.ProductivitySuggestion;
 import com.personaleenergy.app.ml.EnergyPredictor;
 import com.personaleenergy.app.llm.LLMService;
@@ -52,9 +52,10 @@ public class EnergyPredictionActivity extends AppCompatActivity {
         btnLoadData.setEnabled(false);
         tvPredictions.setText("Loading data...");
         
-        fitManager.readCombinedBiometricData(24, new GoogleFitManager.BiometricCallback() {
+        // Hourly summaries are all the predictor needs, so raw readings are not downloaded
+        fitManager.readHourlyBiometrics(24, new GoogleFitManager.HourlyCallback() {
             @Override
-            public void onSuccess(List<BiometricData> data) {
+            public void onSuccess(List<HourlyBiometrics> data) {
                 runOnUiThread(() -> {
                     if (data.isEmpty()) {
                         tvPredictions.setText("No data available. Please collect some biometric data first.");
@@ -63,7 +64,7 @@ public class EnergyPredictionActivity extends AppCompatActivity {
                     }
                     
                     // Generate predictions for next 12 hours
-                    List<EnergyPrediction> predictions = energyPredictor.predictEnergyLevels(data, 12);
+                    List<EnergyPrediction> predictions = energyPredictor.predictEnergyLevelsFromHourly(data, 12);
                     
                     // Display predictions
                     displayPredictions(predictions);
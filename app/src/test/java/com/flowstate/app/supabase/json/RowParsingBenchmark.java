@@ -0,0 +1,131 @@
+package com.flowstate.app.supabase.json;
+
+import com.flowstate.app.data.models.BiometricData;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Seeded benchmark: decoding a heart_rate_readings response through List<Map<String, Object>>
+ * and manual conversion (the old repository code) vs the streaming {@link BiometricDataAdapter}.
+ *
+ * A plain main, not a unit test. Run it on a desktop JDK (17+) from the IDE, or with the
+ * unit test classpath:
+ *   java -cp <test classes>:<main classes>:gson-2.10.1.jar com.flowstate.app.supabase.json.RowParsingBenchmark [rows] [iterations]
+ * Defaults: 10000 rows, 50 timed iterations after 30 warm-up rounds. Allocation figures come
+ * from the HotSpot per-thread allocation counter.
+ */
+public class RowParsingBenchmark {
+    
+    private static final String USER_ID = "6b0f1c2e-1111-2222-3333-444455556666";
+    private static final int WARM_UP = 30;
+    
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String json = heartRateResponse(rows, dateFormat);
+        
+        Gson mapGson = new Gson();
+        Gson typedGson = new GsonBuilder()
+                .registerTypeAdapter(BiometricData.class, new BiometricDataAdapter())
+                .create();
+        Type mapType = new TypeToken<List<Map<String, Object>>>(){}.getType();
+        Type typedType = new TypeToken<List<BiometricData>>(){}.getType();
+        
+        for (int i = 0; i < WARM_UP; i++) {
+            viaMap(mapGson, json, mapType, dateFormat);
+            viaAdapter(typedGson, json, typedType);
+        }
+        
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            viaMap(mapGson, json, mapType, dateFormat);
+        }
+        long mapNanos = System.nanoTime() - started;
+        long mapBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+        
+        allocated = threads.getThreadAllocatedBytes(thread);
+        started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            viaAdapter(typedGson, json, typedType);
+        }
+        long typedNanos = System.nanoTime() - started;
+        long typedBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+        
+        System.out.printf(Locale.US, "%d rows, %d iterations%n", rows, iterations);
+        System.out.printf(Locale.US, "Map<String, Object> + manual conversion: %.1f ms, %d B/row%n",
+                mapNanos / 1e6 / iterations, mapBytes / iterations / rows);
+        System.out.printf(Locale.US, "streaming TypeAdapter:                   %.1f ms, %d B/row%n",
+                typedNanos / 1e6 / iterations, typedBytes / iterations / rows);
+    }
+    
+    /**
+     * One reading a minute, with the columns a select=* on heart_rate_readings returns
+     */
+    private static String heartRateResponse(int rows, SimpleDateFormat dateFormat) {
+        long start = 1_700_000_000_000L;
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rows; i++) {
+            String time = dateFormat.format(new Date(start + i * 60_000L));
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(UUID.randomUUID())
+                    .append("\",\"user_id\":\"").append(USER_ID)
+                    .append("\",\"timestamp\":\"").append(time)
+                    .append("\",\"heart_rate_bpm\":").append(60 + i % 40)
+                    .append(",\"source\":\"google_fit\",\"created_at\":\"").append(time)
+                    .append("\"}");
+        }
+        return json.append(']').toString();
+    }
+    
+    /**
+     * The conversion the repositories did before the adapters
+     */
+    private static List<BiometricData> viaMap(Gson gson, String json, Type type, SimpleDateFormat dateFormat)
+            throws ParseException {
+        List<Map<String, Object>> maps = gson.fromJson(json, type);
+        List<BiometricData> data = new ArrayList<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            Date timestamp = dateFormat.parse(map.get("timestamp").toString());
+            data.add(new BiometricData(
+                    timestamp,
+                    map.get("heart_rate_bpm") != null ?
+                            ((Number) map.get("heart_rate_bpm")).intValue() : null,
+                    null,
+                    null,
+                    null
+            ));
+        }
+        return data;
+    }
+    
+    private static List<BiometricData> viaAdapter(Gson gson, String json, Type type) {
+        List<BiometricData> data = gson.fromJson(json, type);
+        // Rows with unreadable timestamps decode to null
+        data.removeIf(Objects::isNull);
+        return data;
+    }
+}
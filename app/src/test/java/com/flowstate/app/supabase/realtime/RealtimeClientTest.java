@@ -0,0 +1,151 @@
+package com.flowstate.app.supabase.realtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.flowstate.app.supabase.http.QueryCache;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link RealtimeClient} against a local stand-in for the Supabase Realtime server
+ */
+public class RealtimeClientTest {
+    
+    private static final long HEARTBEAT_MS = 200;
+    private static final long TIMEOUT_S = 10;
+    
+    private MockWebServer server;
+    private RealtimeClient client;
+    
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new RealtimeClient(new OkHttpClient(), server.url("/").toString(), "anon-key", () -> "token",
+                new QueryCache(1024 * 1024, 60_000), HEARTBEAT_MS);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.shutdown();
+    }
+    
+    @Test
+    public void deliversChangesAndResubscribesAfterMissedHeartbeat() throws Exception {
+        PhoenixServer first = new PhoenixServer();
+        PhoenixServer second = new PhoenixServer();
+        server.enqueue(new MockResponse().withWebSocketUpgrade(first));
+        server.enqueue(new MockResponse().withWebSocketUpgrade(second));
+        
+        BlockingQueue<RowChange> changes = new LinkedBlockingQueue<>();
+        CountDownLatch resubscribed = new CountDownLatch(1);
+        client.subscribe("heart_rate_readings", "user-1", new RealtimeClient.ChangeListener() {
+            @Override
+            public void onChange(RowChange change) {
+                changes.add(change);
+            }
+            
+            @Override
+            public void onResubscribed() {
+                resubscribed.countDown();
+            }
+        });
+        
+        // Join
+        JsonObject join = first.next("phx_join");
+        String topic = join.get("topic").getAsString();
+        JsonObject change = join.getAsJsonObject("payload").getAsJsonObject("config")
+                .getAsJsonArray("postgres_changes").get(0).getAsJsonObject();
+        assertEquals("heart_rate_readings", change.get("table").getAsString());
+        assertEquals("user_id=eq.user-1", change.get("filter").getAsString());
+        assertEquals("token", join.getAsJsonObject("payload").get("access_token").getAsString());
+        first.replyOk(join);
+        
+        // A change
+        first.send(topic, "postgres_changes", "{\"data\":{\"type\":\"INSERT\",\"table\":\"heart_rate_readings\","
+                + "\"record\":{\"id\":\"row-1\",\"heart_rate_bpm\":72},\"commit_timestamp\":\"2026-01-01T00:00:00Z\"}}");
+        RowChange received = changes.poll(TIMEOUT_S, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals(RowChange.Type.INSERT, received.getType());
+        assertEquals("row-1", received.getId());
+        assertEquals(72, received.getRecord().get("heart_rate_bpm").getAsInt());
+        
+        // A heartbeat left unanswered drops the connection; the client reconnects and joins again
+        first.next("heartbeat");
+        JsonObject rejoin = second.next("phx_join");
+        assertEquals(topic, rejoin.get("topic").getAsString());
+        assertEquals(1, resubscribed.getCount());
+        second.replyOk(rejoin);
+        assertTrue(resubscribed.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(2, server.getRequestCount());
+    }
+    
+    /**
+     * Server side of one websocket connection, speaking enough of the Phoenix protocol for the client
+     */
+    private static class PhoenixServer extends WebSocketListener {
+        private final BlockingQueue<JsonObject> received = new LinkedBlockingQueue<>();
+        private volatile WebSocket socket;
+        
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            socket = webSocket;
+        }
+        
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            received.add(JsonParser.parseString(text).getAsJsonObject());
+        }
+        
+        /**
+         * The next message the client sent with {@code event}, skipping any others
+         */
+        JsonObject next(String event) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+            while (true) {
+                JsonObject message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (message == null) {
+                    throw new AssertionError("No " + event + " received");
+                }
+                if (event.equals(message.get("event").getAsString())) {
+                    return message;
+                }
+            }
+        }
+        
+        void replyOk(JsonObject request) {
+            send(request.get("topic").getAsString(), "phx_reply", "{\"status\":\"ok\",\"response\":{}}",
+                    request.get("ref").getAsString());
+        }
+        
+        void send(String topic, String event, String payload) {
+            send(topic, event, payload, null);
+        }
+        
+        private void send(String topic, String event, String payload, String ref) {
+            JsonObject message = new JsonObject();
+            message.addProperty("topic", topic);
+            message.addProperty("event", event);
+            message.add("payload", JsonParser.parseString(payload));
+            message.addProperty("ref", ref);
+            socket.send(message.toString());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+-- Seeded benchmark: plain heart_rate_readings vs monthly partitions with BRIN.
+-- Run against a local Postgres (13+), not a Supabase project:
+--   psql -d postgres -f supabase/benchmarks/heart_rate_partitioning.sql
+-- Everything is created in a throwaway schema that is dropped at the end.
+-- Scale with -v users=N -v days=N (defaults: 200 users, 180 days of minute readings).
+
+\set ON_ERROR_STOP on
+\if :{?users}
+\else
+\set users 200
+\endif
+\if :{?days}
+\else
+\set days 180
+\endif
+\timing on
+
+DROP SCHEMA IF EXISTS hr_bench CASCADE;
+CREATE SCHEMA hr_bench;
+SET search_path = hr_bench;
+
+-- Same shape as before partitioning: one heap, B-trees on (user_id, timestamp)
+CREATE TABLE plain (
+    id UUID DEFAULT gen_random_uuid() PRIMARY KEY,
+    user_id UUID NOT NULL,
+    timestamp TIMESTAMPTZ NOT NULL,
+    heart_rate_bpm INTEGER NOT NULL,
+    source TEXT DEFAULT 'google_fit',
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    UNIQUE (user_id, timestamp)
+);
+CREATE INDEX ON plain (user_id, timestamp DESC);
+CREATE INDEX ON plain (user_id, created_at);
+
+-- Same shape as schema.sql now
+CREATE TABLE partitioned (
+    id UUID DEFAULT gen_random_uuid() NOT NULL,
+    user_id UUID NOT NULL,
+    timestamp TIMESTAMPTZ NOT NULL,
+    heart_rate_bpm INTEGER NOT NULL,
+    source TEXT DEFAULT 'google_fit',
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    PRIMARY KEY (id, timestamp),
+    UNIQUE (user_id, timestamp)
+) PARTITION BY RANGE (timestamp);
+CREATE TABLE partitioned_default PARTITION OF partitioned DEFAULT;
+CREATE INDEX ON partitioned USING BRIN (timestamp) WITH (pages_per_range = 32);
+CREATE INDEX ON partitioned (user_id, created_at);
+
+SELECT format('CREATE TABLE %I PARTITION OF hr_bench.partitioned FOR VALUES FROM (%L) TO (%L)',
+              'partitioned_' || to_char(m, 'YYYY_MM'), m, m + INTERVAL '1 month')
+FROM generate_series(date_trunc('month', NOW() - make_interval(days => :days)),
+                     date_trunc('month', NOW()), INTERVAL '1 month') AS m
+\gexec
+
+CREATE TABLE users AS SELECT gen_random_uuid() AS user_id FROM generate_series(1, :users);
+
+-- One reading per user per minute, inserted in time order as uploads arrive
+\echo 'Seeding plain'
+INSERT INTO plain (user_id, timestamp, heart_rate_bpm)
+SELECT u.user_id, t, 50 + (random() * 100)::INT
+FROM generate_series(NOW() - make_interval(days => :days), NOW(), INTERVAL '1 minute') AS t
+CROSS JOIN users u
+ORDER BY t;
+
+\echo 'Seeding partitioned'
+INSERT INTO partitioned (id, user_id, timestamp, heart_rate_bpm, source, created_at)
+SELECT id, user_id, timestamp, heart_rate_bpm, source, created_at FROM plain ORDER BY timestamp;
+
+VACUUM ANALYZE plain;
+VACUUM ANALYZE partitioned;
+
+SELECT 'plain' AS layout, pg_size_pretty(pg_total_relation_size('plain')) AS total
+UNION ALL
+SELECT 'partitioned', pg_size_pretty(SUM(pg_total_relation_size(inhrelid)))
+FROM pg_inherits WHERE inhparent = 'partitioned'::regclass;
+
+SELECT user_id AS bench_user FROM users LIMIT 1 \gset
+
+\echo 'One user, last 24 hours (dashboard)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT timestamp, heart_rate_bpm FROM plain
+WHERE user_id = :'bench_user' AND timestamp >= NOW() - INTERVAL '1 day' ORDER BY timestamp DESC;
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT timestamp, heart_rate_bpm FROM partitioned
+WHERE user_id = :'bench_user' AND timestamp >= NOW() - INTERVAL '1 day' ORDER BY timestamp DESC;
+
+\echo 'One user, last 30 days (history)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT timestamp, heart_rate_bpm FROM plain
+WHERE user_id = :'bench_user' AND timestamp >= NOW() - INTERVAL '30 days';
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT timestamp, heart_rate_bpm FROM partitioned
+WHERE user_id = :'bench_user' AND timestamp >= NOW() - INTERVAL '30 days';
+
+\echo 'All users, one hour (maintenance and retention scans)'
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT COUNT(*), AVG(heart_rate_bpm) FROM plain
+WHERE timestamp >= NOW() - INTERVAL '10 days' AND timestamp < NOW() - INTERVAL '10 days' + INTERVAL '1 hour';
+EXPLAIN (ANALYZE, BUFFERS, COSTS OFF)
+SELECT COUNT(*), AVG(heart_rate_bpm) FROM partitioned
+WHERE timestamp >= NOW() - INTERVAL '10 days' AND timestamp < NOW() - INTERVAL '10 days' + INTERVAL '1 hour';
+
+-- Dropping the oldest month: a delete rewrites and vacuums every row, a detach is a catalog change
+SELECT date_trunc('month', MIN(timestamp)) AS oldest_month FROM plain \gset
+SELECT 'partitioned_' || to_char(:'oldest_month'::TIMESTAMPTZ, 'YYYY_MM') AS oldest_partition \gset
+
+\echo 'Removing the oldest month'
+BEGIN;
+DELETE FROM plain WHERE timestamp >= :'oldest_month' AND timestamp < :'oldest_month'::TIMESTAMPTZ + INTERVAL '1 month';
+COMMIT;
+ALTER TABLE partitioned DETACH PARTITION :"oldest_partition";
+
+RESET search_path;
+DROP SCHEMA hr_bench CASCADE;
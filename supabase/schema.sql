@@ -1,6 +1,8 @@
 -- Supabase Database Schema for FlowState
 -- Run this SQL in your Supabase SQL Editor
 -- This schema is normalized (3NF) and designed for optimal performance
+-- Safe to re-run: on an existing database it applies changes in place, including the
+-- heart_rate_readings partitioning migration, and recreates policies and triggers
 
 -- Enable UUID extension
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp";
@@ -30,24 +32,60 @@ CREATE TABLE IF NOT EXISTS public.user_settings (
     google_fit_account TEXT,
     ml_model_preference TEXT DEFAULT 'default', -- model version preference
     data_sync_enabled BOOLEAN DEFAULT true,
+    -- Days raw heart rate readings are kept before being compacted into the rollups; NULL keeps them
+    raw_retention_days INTEGER DEFAULT 90 CHECK (raw_retention_days IS NULL OR raw_retention_days >= 7),
     created_at TIMESTAMPTZ DEFAULT NOW(),
     updated_at TIMESTAMPTZ DEFAULT NOW()
 );
 
+ALTER TABLE public.user_settings ADD COLUMN IF NOT EXISTS
+    raw_retention_days INTEGER DEFAULT 90 CHECK (raw_retention_days IS NULL OR raw_retention_days >= 7);
+
 -- ============================================================================
 -- BIOMETRIC DATA (Normalized)
 -- ============================================================================
 
--- Heart rate readings table
+-- Deployments created before partitioning have a plain heart_rate_readings table. Move it
+-- aside, with its index names, so the partitioned table below can be created; its rows are
+-- copied over once the partitions exist (see HEART RATE PARTITIONS).
+DO $$
+BEGIN
+    IF EXISTS (
+        SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = 'public' AND c.relname = 'heart_rate_readings' AND c.relkind = 'r'
+    ) THEN
+        ALTER TABLE public.heart_rate_readings RENAME TO heart_rate_readings_unpartitioned;
+        ALTER TABLE public.heart_rate_readings_unpartitioned
+            RENAME CONSTRAINT heart_rate_readings_pkey TO heart_rate_readings_unpartitioned_pkey;
+        ALTER TABLE public.heart_rate_readings_unpartitioned
+            RENAME CONSTRAINT unique_user_heartrate_timestamp TO unique_user_heartrate_timestamp_unpartitioned;
+        ALTER INDEX IF EXISTS public.idx_heart_rate_user_timestamp RENAME TO idx_heart_rate_user_timestamp_unpartitioned;
+        ALTER INDEX IF EXISTS public.idx_heart_rate_user_created RENAME TO idx_heart_rate_user_created_unpartitioned;
+        DROP TRIGGER IF EXISTS heart_rate_rollup_insert ON public.heart_rate_readings_unpartitioned;
+        DROP TRIGGER IF EXISTS heart_rate_rollup_update ON public.heart_rate_readings_unpartitioned;
+        DROP TRIGGER IF EXISTS heart_rate_rollup_delete ON public.heart_rate_readings_unpartitioned;
+    END IF;
+END $$;
+
+-- Heart rate readings table, range partitioned by month on timestamp so time range queries
+-- only touch the months they cover and old months can be detached. Unique constraints on a
+-- partitioned table must include the partition key, hence the (id, timestamp) primary key;
+-- (user_id, timestamp) is enforced per partition, which makes it unique table-wide.
 CREATE TABLE IF NOT EXISTS public.heart_rate_readings (
-    id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+    id UUID DEFAULT uuid_generate_v4() NOT NULL,
     user_id UUID REFERENCES auth.users(id) ON DELETE CASCADE NOT NULL,
     timestamp TIMESTAMPTZ NOT NULL,
     heart_rate_bpm INTEGER NOT NULL CHECK (heart_rate_bpm > 0 AND heart_rate_bpm <= 250),
     source TEXT DEFAULT 'google_fit', -- 'google_fit', 'manual', 'device'
     created_at TIMESTAMPTZ DEFAULT NOW(),
+    PRIMARY KEY (id, timestamp),
     CONSTRAINT unique_user_heartrate_timestamp UNIQUE (user_id, timestamp)
-);
+) PARTITION BY RANGE (timestamp);
+
+-- Catches readings outside every monthly partition, e.g. old history imported from Google Fit.
+-- ensure_heart_rate_partitions moves them out when their month is created.
+CREATE TABLE IF NOT EXISTS public.heart_rate_readings_default
+    PARTITION OF public.heart_rate_readings DEFAULT;
 
 -- Sleep sessions table (normalized from biometric data)
 CREATE TABLE IF NOT EXISTS public.sleep_sessions (
@@ -63,7 +101,8 @@ CREATE TABLE IF NOT EXISTS public.sleep_sessions (
     awake_minutes INTEGER,
     source TEXT DEFAULT 'google_fit',
     created_at TIMESTAMPTZ DEFAULT NOW(),
-    CONSTRAINT sleep_end_after_start CHECK (sleep_end IS NULL OR sleep_end >= sleep_start)
+    CONSTRAINT sleep_end_after_start CHECK (sleep_end IS NULL OR sleep_end >= sleep_start),
+    CONSTRAINT unique_user_sleep_start UNIQUE (user_id, sleep_start)
 );
 
 -- Body temperature readings table
@@ -93,7 +132,8 @@ CREATE TABLE IF NOT EXISTS public.typing_speed_tests (
     errors INTEGER DEFAULT 0,
     sample_text TEXT,
     duration_seconds INTEGER,
-    created_at TIMESTAMPTZ DEFAULT NOW()
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT unique_user_typing_timestamp UNIQUE (user_id, timestamp)
 );
 
 -- Reaction time tests table
@@ -105,7 +145,8 @@ CREATE TABLE IF NOT EXISTS public.reaction_time_tests (
     test_type TEXT DEFAULT 'visual' CHECK (test_type IN ('visual', 'audio', 'tactile')),
     attempts INTEGER DEFAULT 1,
     average_reaction_time_ms DOUBLE PRECISION,
-    created_at TIMESTAMPTZ DEFAULT NOW()
+    created_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT unique_user_reaction_timestamp UNIQUE (user_id, timestamp)
 );
 
 -- Cognitive test sessions (aggregates multiple tests)
@@ -120,6 +161,37 @@ CREATE TABLE IF NOT EXISTS public.cognitive_test_sessions (
     created_at TIMESTAMPTZ DEFAULT NOW()
 );
 
+-- Deployments created before writes named an on_conflict target lack the unique constraints
+-- those writes resolve against. Add them, first deleting duplicates so only the most recently
+-- created row for each key is kept, and drop the plain indexes the constraints replace.
+DO $$
+DECLARE
+    target RECORD;
+BEGIN
+    FOR target IN
+        SELECT * FROM (VALUES
+            ('sleep_sessions', 'unique_user_sleep_start', 'sleep_start', 'idx_sleep_sessions_user_start'),
+            ('typing_speed_tests', 'unique_user_typing_timestamp', 'timestamp', 'idx_typing_tests_user_timestamp'),
+            ('reaction_time_tests', 'unique_user_reaction_timestamp', 'timestamp', 'idx_reaction_tests_user_timestamp')
+        ) AS t(table_name, constraint_name, time_column, old_index)
+    LOOP
+        IF NOT EXISTS (
+            SELECT 1 FROM pg_constraint
+            WHERE conname = target.constraint_name AND conrelid = format('public.%I', target.table_name)::regclass
+        ) THEN
+            EXECUTE format(
+                'DELETE FROM public.%1$I t USING public.%1$I newer
+                 WHERE newer.user_id = t.user_id AND newer.%2$I = t.%2$I
+                   AND (COALESCE(newer.created_at, ''-infinity''), newer.id)
+                       > (COALESCE(t.created_at, ''-infinity''), t.id)',
+                target.table_name, target.time_column);
+            EXECUTE format('ALTER TABLE public.%I ADD CONSTRAINT %I UNIQUE (user_id, %I)',
+                           target.table_name, target.constraint_name, target.time_column);
+        END IF;
+        EXECUTE format('DROP INDEX IF EXISTS public.%I', target.old_index);
+    END LOOP;
+END $$;
+
 -- ============================================================================
 -- ENERGY PREDICTIONS & ML
 -- ============================================================================
@@ -234,6 +306,56 @@ CREATE TABLE IF NOT EXISTS public.daily_summaries (
     CONSTRAINT unique_user_date_summary UNIQUE (user_id, summary_date)
 );
 
+-- ============================================================================
+-- ROLLUPS (maintained by triggers on the raw tables, read-only for clients)
+-- ============================================================================
+
+-- Heart rate per UTC hour; sums are stored so means stay exact as buckets change
+CREATE TABLE IF NOT EXISTS public.heart_rate_hourly (
+    id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+    user_id UUID REFERENCES auth.users(id) ON DELETE CASCADE NOT NULL,
+    bucket_start TIMESTAMPTZ NOT NULL, -- start of the UTC hour
+    reading_count INTEGER NOT NULL CHECK (reading_count > 0),
+    heart_rate_sum BIGINT NOT NULL,
+    heart_rate_mean DOUBLE PRECISION GENERATED ALWAYS AS (heart_rate_sum::DOUBLE PRECISION / reading_count) STORED,
+    heart_rate_min INTEGER NOT NULL,
+    heart_rate_max INTEGER NOT NULL,
+    updated_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT unique_user_heart_rate_hour UNIQUE (user_id, bucket_start)
+);
+
+-- Heart rate per UTC day, derived from heart_rate_hourly
+CREATE TABLE IF NOT EXISTS public.heart_rate_daily (
+    id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+    user_id UUID REFERENCES auth.users(id) ON DELETE CASCADE NOT NULL,
+    bucket_date DATE NOT NULL, -- UTC day
+    reading_count INTEGER NOT NULL CHECK (reading_count > 0),
+    heart_rate_sum BIGINT NOT NULL,
+    heart_rate_mean DOUBLE PRECISION GENERATED ALWAYS AS (heart_rate_sum::DOUBLE PRECISION / reading_count) STORED,
+    heart_rate_min INTEGER NOT NULL,
+    heart_rate_max INTEGER NOT NULL,
+    updated_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT unique_user_heart_rate_day UNIQUE (user_id, bucket_date)
+);
+
+-- Typing and reaction time tests per UTC day
+CREATE TABLE IF NOT EXISTS public.cognitive_daily (
+    id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+    user_id UUID REFERENCES auth.users(id) ON DELETE CASCADE NOT NULL,
+    bucket_date DATE NOT NULL, -- UTC day
+    typing_test_count INTEGER NOT NULL DEFAULT 0,
+    words_per_minute_sum BIGINT NOT NULL DEFAULT 0,
+    accuracy_sum DOUBLE PRECISION NOT NULL DEFAULT 0,
+    words_per_minute_mean DOUBLE PRECISION GENERATED ALWAYS AS (words_per_minute_sum::DOUBLE PRECISION / NULLIF(typing_test_count, 0)) STORED,
+    accuracy_mean DOUBLE PRECISION GENERATED ALWAYS AS (accuracy_sum / NULLIF(typing_test_count, 0)) STORED,
+    reaction_test_count INTEGER NOT NULL DEFAULT 0,
+    reaction_time_sum BIGINT NOT NULL DEFAULT 0,
+    reaction_time_mean DOUBLE PRECISION GENERATED ALWAYS AS (reaction_time_sum::DOUBLE PRECISION / NULLIF(reaction_test_count, 0)) STORED,
+    reaction_time_min INTEGER,
+    updated_at TIMESTAMPTZ DEFAULT NOW(),
+    CONSTRAINT unique_user_cognitive_day UNIQUE (user_id, bucket_date)
+);
+
 -- ============================================================================
 -- INDEXES FOR PERFORMANCE
 -- ============================================================================
@@ -243,19 +365,27 @@ CREATE INDEX IF NOT EXISTS idx_profiles_user_id ON public.profiles(id);
 CREATE INDEX IF NOT EXISTS idx_user_settings_user_id ON public.user_settings(user_id);
 
 -- Biometric data indexes
-CREATE INDEX IF NOT EXISTS idx_heart_rate_user_timestamp ON public.heart_rate_readings(user_id, timestamp DESC);
-CREATE INDEX IF NOT EXISTS idx_sleep_sessions_user_start ON public.sleep_sessions(user_id, sleep_start DESC);
+-- heart_rate_readings(user_id, timestamp) is covered by its unique constraint. Readings arrive
+-- roughly in time order, so cross-user time scans use a BRIN index a fraction of a B-tree's size.
+CREATE INDEX IF NOT EXISTS idx_heart_rate_timestamp_brin ON public.heart_rate_readings
+    USING BRIN (timestamp) WITH (pages_per_range = 32);
+-- sleep_sessions(user_id, sleep_start) is covered by its unique constraint
 CREATE INDEX IF NOT EXISTS idx_temperature_user_timestamp ON public.temperature_readings(user_id, timestamp DESC);
 
 -- Cognitive test indexes
-CREATE INDEX IF NOT EXISTS idx_typing_tests_user_timestamp ON public.typing_speed_tests(user_id, timestamp DESC);
-CREATE INDEX IF NOT EXISTS idx_reaction_tests_user_timestamp ON public.reaction_time_tests(user_id, timestamp DESC);
+-- (user_id, timestamp) on typing_speed_tests and reaction_time_tests is covered by their unique constraints
 CREATE INDEX IF NOT EXISTS idx_cognitive_sessions_user_start ON public.cognitive_test_sessions(user_id, session_start DESC);
 
 -- Energy prediction indexes
 CREATE INDEX IF NOT EXISTS idx_energy_predictions_user_time ON public.energy_predictions(user_id, prediction_time DESC);
 CREATE INDEX IF NOT EXISTS idx_prediction_factors_prediction_id ON public.energy_prediction_factors(prediction_id);
 
+-- Delta sync indexes (rows created since the client's per-table watermark)
+CREATE INDEX IF NOT EXISTS idx_heart_rate_user_created ON public.heart_rate_readings(user_id, created_at);
+CREATE INDEX IF NOT EXISTS idx_typing_tests_user_created ON public.typing_speed_tests(user_id, created_at);
+CREATE INDEX IF NOT EXISTS idx_reaction_tests_user_created ON public.reaction_time_tests(user_id, created_at);
+CREATE INDEX IF NOT EXISTS idx_energy_predictions_user_created ON public.energy_predictions(user_id, created_at);
+
 -- Productivity indexes
 CREATE INDEX IF NOT EXISTS idx_suggestions_user_time ON public.productivity_suggestions(user_id, time_slot_start DESC);
 CREATE INDEX IF NOT EXISTS idx_suggestions_prediction_id ON public.productivity_suggestions(prediction_id);
@@ -275,6 +405,8 @@ CREATE INDEX IF NOT EXISTS idx_daily_summaries_user_date ON public.daily_summari
 ALTER TABLE public.profiles ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.user_settings ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.heart_rate_readings ENABLE ROW LEVEL SECURITY;
+-- Partitions are only read through the parent; without policies they are closed to direct access
+ALTER TABLE public.heart_rate_readings_default ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.sleep_sessions ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.temperature_readings ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.typing_speed_tests ENABLE ROW LEVEL SECURITY;
@@ -287,54 +419,69 @@ ALTER TABLE public.ai_schedules ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.scheduled_tasks ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.weekly_insights ENABLE ROW LEVEL SECURITY;
 ALTER TABLE public.daily_summaries ENABLE ROW LEVEL SECURITY;
+ALTER TABLE public.heart_rate_hourly ENABLE ROW LEVEL SECURITY;
+ALTER TABLE public.heart_rate_daily ENABLE ROW LEVEL SECURITY;
+ALTER TABLE public.cognitive_daily ENABLE ROW LEVEL SECURITY;
 
 -- ============================================================================
 -- RLS POLICIES
 -- ============================================================================
 
 -- Profiles policies
+DROP POLICY IF EXISTS "Users can view own profile" ON public.profiles;
 CREATE POLICY "Users can view own profile" ON public.profiles
     FOR SELECT USING (auth.uid() = id);
 
+DROP POLICY IF EXISTS "Users can update own profile" ON public.profiles;
 CREATE POLICY "Users can update own profile" ON public.profiles
     FOR UPDATE USING (auth.uid() = id);
 
+DROP POLICY IF EXISTS "Users can insert own profile" ON public.profiles;
 CREATE POLICY "Users can insert own profile" ON public.profiles
     FOR INSERT WITH CHECK (auth.uid() = id);
 
 -- User settings policies
+DROP POLICY IF EXISTS "Users can manage own settings" ON public.user_settings;
 CREATE POLICY "Users can manage own settings" ON public.user_settings
     FOR ALL USING (auth.uid() = user_id);
 
 -- Heart rate policies
+DROP POLICY IF EXISTS "Users can manage own heart rate data" ON public.heart_rate_readings;
 CREATE POLICY "Users can manage own heart rate data" ON public.heart_rate_readings
     FOR ALL USING (auth.uid() = user_id);
 
 -- Sleep sessions policies
+DROP POLICY IF EXISTS "Users can manage own sleep data" ON public.sleep_sessions;
 CREATE POLICY "Users can manage own sleep data" ON public.sleep_sessions
     FOR ALL USING (auth.uid() = user_id);
 
 -- Temperature policies
+DROP POLICY IF EXISTS "Users can manage own temperature data" ON public.temperature_readings;
 CREATE POLICY "Users can manage own temperature data" ON public.temperature_readings
     FOR ALL USING (auth.uid() = user_id);
 
 -- Typing speed policies
+DROP POLICY IF EXISTS "Users can manage own typing tests" ON public.typing_speed_tests;
 CREATE POLICY "Users can manage own typing tests" ON public.typing_speed_tests
     FOR ALL USING (auth.uid() = user_id);
 
 -- Reaction time policies
+DROP POLICY IF EXISTS "Users can manage own reaction time tests" ON public.reaction_time_tests;
 CREATE POLICY "Users can manage own reaction time tests" ON public.reaction_time_tests
     FOR ALL USING (auth.uid() = user_id);
 
 -- Cognitive test sessions policies
+DROP POLICY IF EXISTS "Users can manage own cognitive sessions" ON public.cognitive_test_sessions;
 CREATE POLICY "Users can manage own cognitive sessions" ON public.cognitive_test_sessions
     FOR ALL USING (auth.uid() = user_id);
 
 -- Energy predictions policies
+DROP POLICY IF EXISTS "Users can manage own energy predictions" ON public.energy_predictions;
 CREATE POLICY "Users can manage own energy predictions" ON public.energy_predictions
     FOR ALL USING (auth.uid() = user_id);
 
 -- Energy prediction factors policies
+DROP POLICY IF EXISTS "Users can view own prediction factors" ON public.energy_prediction_factors;
 CREATE POLICY "Users can view own prediction factors" ON public.energy_prediction_factors
     FOR SELECT USING (
         EXISTS (
@@ -344,6 +491,7 @@ CREATE POLICY "Users can view own prediction factors" ON public.energy_predictio
         )
     );
 
+DROP POLICY IF EXISTS "Users can insert own prediction factors" ON public.energy_prediction_factors;
 CREATE POLICY "Users can insert own prediction factors" ON public.energy_prediction_factors
     FOR INSERT WITH CHECK (
         EXISTS (
@@ -354,14 +502,17 @@ CREATE POLICY "Users can insert own prediction factors" ON public.energy_predict
     );
 
 -- Productivity suggestions policies
+DROP POLICY IF EXISTS "Users can manage own suggestions" ON public.productivity_suggestions;
 CREATE POLICY "Users can manage own suggestions" ON public.productivity_suggestions
     FOR ALL USING (auth.uid() = user_id);
 
 -- AI schedules policies
+DROP POLICY IF EXISTS "Users can manage own schedules" ON public.ai_schedules;
 CREATE POLICY "Users can manage own schedules" ON public.ai_schedules
     FOR ALL USING (auth.uid() = user_id);
 
 -- Scheduled tasks policies
+DROP POLICY IF EXISTS "Users can manage own scheduled tasks" ON public.scheduled_tasks;
 CREATE POLICY "Users can manage own scheduled tasks" ON public.scheduled_tasks
     FOR ALL USING (
         EXISTS (
@@ -372,13 +523,28 @@ CREATE POLICY "Users can manage own scheduled tasks" ON public.scheduled_tasks
     );
 
 -- Weekly insights policies
+DROP POLICY IF EXISTS "Users can manage own weekly insights" ON public.weekly_insights;
 CREATE POLICY "Users can manage own weekly insights" ON public.weekly_insights
     FOR ALL USING (auth.uid() = user_id);
 
 -- Daily summaries policies
+DROP POLICY IF EXISTS "Users can manage own daily summaries" ON public.daily_summaries;
 CREATE POLICY "Users can manage own daily summaries" ON public.daily_summaries
     FOR ALL USING (auth.uid() = user_id);
 
+-- Rollup policies (written only by the rollup triggers)
+DROP POLICY IF EXISTS "Users can view own heart rate hourly rollups" ON public.heart_rate_hourly;
+CREATE POLICY "Users can view own heart rate hourly rollups" ON public.heart_rate_hourly
+    FOR SELECT USING (auth.uid() = user_id);
+
+DROP POLICY IF EXISTS "Users can view own heart rate daily rollups" ON public.heart_rate_daily;
+CREATE POLICY "Users can view own heart rate daily rollups" ON public.heart_rate_daily
+    FOR SELECT USING (auth.uid() = user_id);
+
+DROP POLICY IF EXISTS "Users can view own cognitive daily rollups" ON public.cognitive_daily;
+CREATE POLICY "Users can view own cognitive daily rollups" ON public.cognitive_daily
+    FOR SELECT USING (auth.uid() = user_id);
+
 -- ============================================================================
 -- FUNCTIONS & TRIGGERS
 -- ============================================================================
@@ -393,10 +559,12 @@ END;
 $$ language 'plpgsql';
 
 -- Triggers for updated_at
+DROP TRIGGER IF EXISTS update_profiles_updated_at ON public.profiles;
 CREATE TRIGGER update_profiles_updated_at 
     BEFORE UPDATE ON public.profiles
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
+DROP TRIGGER IF EXISTS update_user_settings_updated_at ON public.user_settings;
 CREATE TRIGGER update_user_settings_updated_at 
     BEFORE UPDATE ON public.user_settings
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
@@ -412,10 +580,52 @@ BEGIN
 END;
 $$ language 'plpgsql';
 
+DROP TRIGGER IF EXISTS calculate_sleep_duration_trigger ON public.sleep_sessions;
 CREATE TRIGGER calculate_sleep_duration_trigger
     BEFORE INSERT OR UPDATE ON public.sleep_sessions
     FOR EACH ROW EXECUTE FUNCTION calculate_sleep_duration();
 
+-- Function to let measurement upserts skip rows they would not change. A replayed write
+-- leaves the row untouched, so no rollup is rebuilt; a real correction moves created_at
+-- forward so delta sync, which reads rows past its created_at watermark, picks it up.
+CREATE OR REPLACE FUNCTION skip_unchanged_measurement()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW IS NOT DISTINCT FROM OLD THEN
+        RETURN NULL;
+    END IF;
+    NEW.created_at := NOW();
+    RETURN NEW;
+END;
+$$ language 'plpgsql';
+
+-- Named to fire after calculate_sleep_duration_trigger, so a replay that leaves
+-- duration_minutes to the database still compares equal
+DROP TRIGGER IF EXISTS skip_unchanged_sleep_sessions ON public.sleep_sessions;
+CREATE TRIGGER skip_unchanged_sleep_sessions
+    BEFORE UPDATE ON public.sleep_sessions
+    FOR EACH ROW EXECUTE FUNCTION skip_unchanged_measurement();
+
+DROP TRIGGER IF EXISTS skip_unchanged_heart_rate_readings ON public.heart_rate_readings;
+CREATE TRIGGER skip_unchanged_heart_rate_readings
+    BEFORE UPDATE ON public.heart_rate_readings
+    FOR EACH ROW EXECUTE FUNCTION skip_unchanged_measurement();
+
+DROP TRIGGER IF EXISTS skip_unchanged_temperature_readings ON public.temperature_readings;
+CREATE TRIGGER skip_unchanged_temperature_readings
+    BEFORE UPDATE ON public.temperature_readings
+    FOR EACH ROW EXECUTE FUNCTION skip_unchanged_measurement();
+
+DROP TRIGGER IF EXISTS skip_unchanged_typing_speed_tests ON public.typing_speed_tests;
+CREATE TRIGGER skip_unchanged_typing_speed_tests
+    BEFORE UPDATE ON public.typing_speed_tests
+    FOR EACH ROW EXECUTE FUNCTION skip_unchanged_measurement();
+
+DROP TRIGGER IF EXISTS skip_unchanged_reaction_time_tests ON public.reaction_time_tests;
+CREATE TRIGGER skip_unchanged_reaction_time_tests
+    BEFORE UPDATE ON public.reaction_time_tests
+    FOR EACH ROW EXECUTE FUNCTION skip_unchanged_measurement();
+
 -- Function to create default user settings on profile creation
 CREATE OR REPLACE FUNCTION create_default_user_settings()
 RETURNS TRIGGER AS $$
@@ -427,6 +637,604 @@ BEGIN
 END;
 $$ language 'plpgsql';
 
+DROP TRIGGER IF EXISTS create_user_settings_on_profile ON public.profiles;
 CREATE TRIGGER create_user_settings_on_profile
     AFTER INSERT ON public.profiles
     FOR EACH ROW EXECUTE FUNCTION create_default_user_settings();
+
+-- Recompute the heart rate rollups for the given (user, UTC hour) buckets.
+-- Only touched buckets are rebuilt: hours from the raw readings, days from the hours.
+CREATE OR REPLACE FUNCTION refresh_heart_rate_rollups(p_user_ids UUID[], p_hours TIMESTAMPTZ[])
+RETURNS VOID AS $$
+BEGIN
+    WITH touched AS (
+        SELECT DISTINCT user_id, bucket_start
+        FROM unnest(p_user_ids, p_hours) AS t(user_id, bucket_start)
+    ), totals AS (
+        SELECT t.user_id, t.bucket_start,
+               COUNT(r.heart_rate_bpm) AS n, SUM(r.heart_rate_bpm) AS total,
+               MIN(r.heart_rate_bpm) AS lo, MAX(r.heart_rate_bpm) AS hi
+        FROM touched t
+        LEFT JOIN public.heart_rate_readings r
+            ON r.user_id = t.user_id
+            AND r.timestamp >= t.bucket_start AND r.timestamp < t.bucket_start + INTERVAL '1 hour'
+        GROUP BY t.user_id, t.bucket_start
+    ), emptied AS (
+        DELETE FROM public.heart_rate_hourly h
+        USING totals
+        WHERE h.user_id = totals.user_id AND h.bucket_start = totals.bucket_start AND totals.n = 0
+    )
+    INSERT INTO public.heart_rate_hourly (user_id, bucket_start, reading_count, heart_rate_sum, heart_rate_min, heart_rate_max)
+    SELECT user_id, bucket_start, n, total, lo, hi FROM totals WHERE n > 0
+    ON CONFLICT (user_id, bucket_start) DO UPDATE SET
+        reading_count = EXCLUDED.reading_count,
+        heart_rate_sum = EXCLUDED.heart_rate_sum,
+        heart_rate_min = EXCLUDED.heart_rate_min,
+        heart_rate_max = EXCLUDED.heart_rate_max,
+        updated_at = NOW();
+
+    WITH touched AS (
+        SELECT DISTINCT user_id, (bucket_start AT TIME ZONE 'UTC')::DATE AS bucket_date
+        FROM unnest(p_user_ids, p_hours) AS t(user_id, bucket_start)
+    ), totals AS (
+        SELECT t.user_id, t.bucket_date,
+               COALESCE(SUM(h.reading_count), 0) AS n, SUM(h.heart_rate_sum) AS total,
+               MIN(h.heart_rate_min) AS lo, MAX(h.heart_rate_max) AS hi
+        FROM touched t
+        LEFT JOIN public.heart_rate_hourly h
+            ON h.user_id = t.user_id
+            AND h.bucket_start >= t.bucket_date::TIMESTAMP AT TIME ZONE 'UTC'
+            AND h.bucket_start < (t.bucket_date + 1)::TIMESTAMP AT TIME ZONE 'UTC'
+        GROUP BY t.user_id, t.bucket_date
+    ), emptied AS (
+        DELETE FROM public.heart_rate_daily d
+        USING totals
+        WHERE d.user_id = totals.user_id AND d.bucket_date = totals.bucket_date AND totals.n = 0
+    )
+    INSERT INTO public.heart_rate_daily (user_id, bucket_date, reading_count, heart_rate_sum, heart_rate_min, heart_rate_max)
+    SELECT user_id, bucket_date, n, total, lo, hi FROM totals WHERE n > 0
+    ON CONFLICT (user_id, bucket_date) DO UPDATE SET
+        reading_count = EXCLUDED.reading_count,
+        heart_rate_sum = EXCLUDED.heart_rate_sum,
+        heart_rate_min = EXCLUDED.heart_rate_min,
+        heart_rate_max = EXCLUDED.heart_rate_max,
+        updated_at = NOW();
+END;
+$$ language 'plpgsql' SECURITY DEFINER SET search_path = public;
+
+-- Only the rollup triggers may rebuild buckets; keep it out of the PostgREST RPC surface
+REVOKE EXECUTE ON FUNCTION refresh_heart_rate_rollups(UUID[], TIMESTAMPTZ[]) FROM PUBLIC, anon, authenticated;
+
+-- Statement-level trigger: one rollup refresh per insert/upsert/delete statement,
+-- reading the affected rows from the transition tables
+CREATE OR REPLACE FUNCTION heart_rate_rollup_trigger()
+RETURNS TRIGGER AS $$
+DECLARE
+    user_ids UUID[];
+    hours TIMESTAMPTZ[];
+BEGIN
+    -- Retention compaction brings the rollups up to date itself before deleting raw readings,
+    -- which must not empty the buckets they leave behind
+    IF TG_OP = 'DELETE' AND current_setting('flowstate.compacting', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP = 'INSERT' THEN
+        SELECT array_agg(user_id), array_agg(bucket_start) INTO user_ids, hours
+        FROM (SELECT DISTINCT user_id, date_trunc('hour', timestamp, 'UTC') AS bucket_start FROM new_rows) k;
+    ELSIF TG_OP = 'UPDATE' THEN
+        SELECT array_agg(user_id), array_agg(bucket_start) INTO user_ids, hours
+        FROM (SELECT user_id, date_trunc('hour', timestamp, 'UTC') AS bucket_start FROM old_rows
+              UNION
+              SELECT user_id, date_trunc('hour', timestamp, 'UTC') FROM new_rows) k;
+    ELSE
+        SELECT array_agg(user_id), array_agg(bucket_start) INTO user_ids, hours
+        FROM (SELECT DISTINCT user_id, date_trunc('hour', timestamp, 'UTC') AS bucket_start FROM old_rows) k;
+    END IF;
+    IF user_ids IS NOT NULL THEN
+        PERFORM refresh_heart_rate_rollups(user_ids, hours);
+    END IF;
+    RETURN NULL;
+END;
+$$ language 'plpgsql' SECURITY DEFINER SET search_path = public;
+
+DROP TRIGGER IF EXISTS heart_rate_rollup_insert ON public.heart_rate_readings;
+CREATE TRIGGER heart_rate_rollup_insert
+    AFTER INSERT ON public.heart_rate_readings
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION heart_rate_rollup_trigger();
+
+DROP TRIGGER IF EXISTS heart_rate_rollup_update ON public.heart_rate_readings;
+CREATE TRIGGER heart_rate_rollup_update
+    AFTER UPDATE ON public.heart_rate_readings
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION heart_rate_rollup_trigger();
+
+DROP TRIGGER IF EXISTS heart_rate_rollup_delete ON public.heart_rate_readings;
+CREATE TRIGGER heart_rate_rollup_delete
+    AFTER DELETE ON public.heart_rate_readings
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION heart_rate_rollup_trigger();
+
+-- Recompute cognitive_daily for the given (user, UTC day) buckets from both test tables
+CREATE OR REPLACE FUNCTION refresh_cognitive_rollups(p_user_ids UUID[], p_dates DATE[])
+RETURNS VOID AS $$
+BEGIN
+    WITH touched AS (
+        SELECT DISTINCT user_id, bucket_date,
+               bucket_date::TIMESTAMP AT TIME ZONE 'UTC' AS day_start,
+               (bucket_date + 1)::TIMESTAMP AT TIME ZONE 'UTC' AS day_end
+        FROM unnest(p_user_ids, p_dates) AS t(user_id, bucket_date)
+    ), typing AS (
+        SELECT t.user_id, t.bucket_date,
+               COUNT(s.id) AS n, COALESCE(SUM(s.words_per_minute), 0) AS wpm, COALESCE(SUM(s.accuracy_percentage), 0) AS accuracy
+        FROM touched t
+        LEFT JOIN public.typing_speed_tests s
+            ON s.user_id = t.user_id AND s.timestamp >= t.day_start AND s.timestamp < t.day_end
+        GROUP BY t.user_id, t.bucket_date
+    ), reaction AS (
+        SELECT t.user_id, t.bucket_date,
+               COUNT(r.id) AS n, COALESCE(SUM(r.reaction_time_ms), 0) AS total, MIN(r.reaction_time_ms) AS fastest
+        FROM touched t
+        LEFT JOIN public.reaction_time_tests r
+            ON r.user_id = t.user_id AND r.timestamp >= t.day_start AND r.timestamp < t.day_end
+        GROUP BY t.user_id, t.bucket_date
+    ), totals AS (
+        SELECT typing.user_id, typing.bucket_date,
+               typing.n AS typing_n, typing.wpm, typing.accuracy,
+               reaction.n AS reaction_n, reaction.total AS reaction_total, reaction.fastest
+        FROM typing
+        JOIN reaction ON reaction.user_id = typing.user_id AND reaction.bucket_date = typing.bucket_date
+    ), emptied AS (
+        DELETE FROM public.cognitive_daily c
+        USING totals
+        WHERE c.user_id = totals.user_id AND c.bucket_date = totals.bucket_date
+            AND totals.typing_n = 0 AND totals.reaction_n = 0
+    )
+    INSERT INTO public.cognitive_daily (user_id, bucket_date, typing_test_count, words_per_minute_sum, accuracy_sum,
+                                        reaction_test_count, reaction_time_sum, reaction_time_min)
+    SELECT user_id, bucket_date, typing_n, wpm, accuracy, reaction_n, reaction_total, fastest
+    FROM totals
+    WHERE typing_n > 0 OR reaction_n > 0
+    ON CONFLICT (user_id, bucket_date) DO UPDATE SET
+        typing_test_count = EXCLUDED.typing_test_count,
+        words_per_minute_sum = EXCLUDED.words_per_minute_sum,
+        accuracy_sum = EXCLUDED.accuracy_sum,
+        reaction_test_count = EXCLUDED.reaction_test_count,
+        reaction_time_sum = EXCLUDED.reaction_time_sum,
+        reaction_time_min = EXCLUDED.reaction_time_min,
+        updated_at = NOW();
+END;
+$$ language 'plpgsql' SECURITY DEFINER SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION refresh_cognitive_rollups(UUID[], DATE[]) FROM PUBLIC, anon, authenticated;
+
+-- Shared by typing_speed_tests and reaction_time_tests, which both have user_id and timestamp
+CREATE OR REPLACE FUNCTION cognitive_rollup_trigger()
+RETURNS TRIGGER AS $$
+DECLARE
+    user_ids UUID[];
+    dates DATE[];
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        SELECT array_agg(user_id), array_agg(bucket_date) INTO user_ids, dates
+        FROM (SELECT DISTINCT user_id, (timestamp AT TIME ZONE 'UTC')::DATE AS bucket_date FROM new_rows) k;
+    ELSIF TG_OP = 'UPDATE' THEN
+        SELECT array_agg(user_id), array_agg(bucket_date) INTO user_ids, dates
+        FROM (SELECT user_id, (timestamp AT TIME ZONE 'UTC')::DATE AS bucket_date FROM old_rows
+              UNION
+              SELECT user_id, (timestamp AT TIME ZONE 'UTC')::DATE FROM new_rows) k;
+    ELSE
+        SELECT array_agg(user_id), array_agg(bucket_date) INTO user_ids, dates
+        FROM (SELECT DISTINCT user_id, (timestamp AT TIME ZONE 'UTC')::DATE AS bucket_date FROM old_rows) k;
+    END IF;
+    IF user_ids IS NOT NULL THEN
+        PERFORM refresh_cognitive_rollups(user_ids, dates);
+    END IF;
+    RETURN NULL;
+END;
+$$ language 'plpgsql' SECURITY DEFINER SET search_path = public;
+
+DROP TRIGGER IF EXISTS typing_rollup_insert ON public.typing_speed_tests;
+CREATE TRIGGER typing_rollup_insert
+    AFTER INSERT ON public.typing_speed_tests
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+DROP TRIGGER IF EXISTS typing_rollup_update ON public.typing_speed_tests;
+CREATE TRIGGER typing_rollup_update
+    AFTER UPDATE ON public.typing_speed_tests
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+DROP TRIGGER IF EXISTS typing_rollup_delete ON public.typing_speed_tests;
+CREATE TRIGGER typing_rollup_delete
+    AFTER DELETE ON public.typing_speed_tests
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+DROP TRIGGER IF EXISTS reaction_rollup_insert ON public.reaction_time_tests;
+CREATE TRIGGER reaction_rollup_insert
+    AFTER INSERT ON public.reaction_time_tests
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+DROP TRIGGER IF EXISTS reaction_rollup_update ON public.reaction_time_tests;
+CREATE TRIGGER reaction_rollup_update
+    AFTER UPDATE ON public.reaction_time_tests
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+DROP TRIGGER IF EXISTS reaction_rollup_delete ON public.reaction_time_tests;
+CREATE TRIGGER reaction_rollup_delete
+    AFTER DELETE ON public.reaction_time_tests
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION cognitive_rollup_trigger();
+
+-- Backfill cognitive_daily from tests recorded before the rollup triggers existed.
+-- Every day with tests is recomputed the way refresh_cognitive_rollups does, so running
+-- this again only rewrites the same totals. Test rows are never compacted, so the
+-- history is complete.
+INSERT INTO public.cognitive_daily (user_id, bucket_date, typing_test_count, words_per_minute_sum, accuracy_sum,
+                                    reaction_test_count, reaction_time_sum, reaction_time_min)
+SELECT COALESCE(typing.user_id, reaction.user_id), COALESCE(typing.bucket_date, reaction.bucket_date),
+       COALESCE(typing.n, 0), COALESCE(typing.wpm, 0), COALESCE(typing.accuracy, 0),
+       COALESCE(reaction.n, 0), COALESCE(reaction.total, 0), reaction.fastest
+FROM (
+    SELECT user_id, (timestamp AT TIME ZONE 'UTC')::DATE AS bucket_date,
+           COUNT(id) AS n, COALESCE(SUM(words_per_minute), 0) AS wpm, COALESCE(SUM(accuracy_percentage), 0) AS accuracy
+    FROM public.typing_speed_tests
+    GROUP BY user_id, (timestamp AT TIME ZONE 'UTC')::DATE
+) typing
+FULL JOIN (
+    SELECT user_id, (timestamp AT TIME ZONE 'UTC')::DATE AS bucket_date,
+           COUNT(id) AS n, COALESCE(SUM(reaction_time_ms), 0) AS total, MIN(reaction_time_ms) AS fastest
+    FROM public.reaction_time_tests
+    GROUP BY user_id, (timestamp AT TIME ZONE 'UTC')::DATE
+) reaction ON reaction.user_id = typing.user_id AND reaction.bucket_date = typing.bucket_date
+ON CONFLICT (user_id, bucket_date) DO UPDATE SET
+    typing_test_count = EXCLUDED.typing_test_count,
+    words_per_minute_sum = EXCLUDED.words_per_minute_sum,
+    accuracy_sum = EXCLUDED.accuracy_sum,
+    reaction_test_count = EXCLUDED.reaction_test_count,
+    reaction_time_sum = EXCLUDED.reaction_time_sum,
+    reaction_time_min = EXCLUDED.reaction_time_min,
+    updated_at = NOW();
+
+-- ============================================================================
+-- AGGREGATION RPCS
+-- ============================================================================
+
+-- Hourly heart rate and sleep quality buckets for one user, for every hour overlapping
+-- [p_from, p_to), including the partial first hour when p_from is not on the hour.
+-- Called via POST /rest/v1/rpc/hourly_biometrics so clients fetch ~24 rows per day
+-- instead of every raw reading. Runs as the caller, so RLS still applies.
+CREATE OR REPLACE FUNCTION public.hourly_biometrics(p_user_id UUID, p_from TIMESTAMPTZ, p_to TIMESTAMPTZ)
+RETURNS TABLE (
+    bucket_start TIMESTAMPTZ,
+    heart_rate_count BIGINT,
+    heart_rate_mean DOUBLE PRECISION,
+    heart_rate_min INTEGER,
+    heart_rate_max INTEGER,
+    sleep_quality_count BIGINT,
+    sleep_quality_mean DOUBLE PRECISION,
+    sleep_quality_min DOUBLE PRECISION,
+    sleep_quality_max DOUBLE PRECISION
+) AS $$
+    WITH heart_rate AS (
+        SELECT bucket_start,
+               reading_count::BIGINT AS n,
+               heart_rate_mean AS mean,
+               heart_rate_min AS lo,
+               heart_rate_max AS hi
+        FROM public.heart_rate_hourly
+        WHERE user_id = p_user_id AND bucket_start >= date_trunc('hour', p_from, 'UTC') AND bucket_start < p_to
+    ), sleep_quality AS (
+        SELECT date_trunc('hour', sleep_start, 'UTC') AS bucket_start,
+               COUNT(*) AS n,
+               AVG(sleep_quality_score) AS mean,
+               MIN(sleep_quality_score) AS lo,
+               MAX(sleep_quality_score) AS hi
+        FROM public.sleep_sessions
+        WHERE user_id = p_user_id AND sleep_start >= date_trunc('hour', p_from, 'UTC') AND sleep_start < p_to
+              AND sleep_quality_score IS NOT NULL
+        GROUP BY 1
+    )
+    SELECT COALESCE(hr.bucket_start, sq.bucket_start),
+           COALESCE(hr.n, 0), hr.mean, hr.lo, hr.hi,
+           COALESCE(sq.n, 0), sq.mean, sq.lo, sq.hi
+    FROM heart_rate hr
+    FULL OUTER JOIN sleep_quality sq ON sq.bucket_start = hr.bucket_start
+    ORDER BY 1;
+$$ LANGUAGE sql STABLE;
+
+GRANT EXECUTE ON FUNCTION public.hourly_biometrics(UUID, TIMESTAMPTZ, TIMESTAMPTZ) TO authenticated;
+
+-- ============================================================================
+-- REALTIME
+-- ============================================================================
+
+-- Tables whose row changes are pushed to subscribed clients. Realtime applies the
+-- RLS policies above to every change before sending it.
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_publication WHERE pubname = 'supabase_realtime') THEN
+        CREATE PUBLICATION supabase_realtime;
+    END IF;
+    FOREACH t IN ARRAY ARRAY['energy_predictions', 'ai_schedules', 'scheduled_tasks'] LOOP
+        IF NOT EXISTS (
+            SELECT 1 FROM pg_publication_tables
+            WHERE pubname = 'supabase_realtime' AND schemaname = 'public' AND tablename = t
+        ) THEN
+            EXECUTE format('ALTER PUBLICATION supabase_realtime ADD TABLE public.%I', t);
+        END IF;
+    END LOOP;
+END $$;
+
+-- ============================================================================
+-- HEART RATE PARTITIONS
+-- ============================================================================
+
+-- Create the monthly heart_rate_readings partitions from p_from's month (default: this month)
+-- through p_months_ahead months from now, returning how many were created. Run ahead of time,
+-- so new readings never fall into the default partition. Rows the default partition already
+-- holds for a new month are moved into it; moving them fires no rollup triggers, since the
+-- triggers are on the parent table and the readings are unchanged.
+CREATE OR REPLACE FUNCTION public.ensure_heart_rate_partitions(p_from DATE DEFAULT NULL, p_months_ahead INTEGER DEFAULT 3)
+RETURNS INTEGER AS $$
+DECLARE
+    month_start DATE := date_trunc('month', COALESCE(p_from, (NOW() AT TIME ZONE 'UTC')::DATE))::DATE;
+    last_month DATE := (date_trunc('month', NOW() AT TIME ZONE 'UTC') + make_interval(months => p_months_ahead))::DATE;
+    partition_name TEXT;
+    lower_bound TIMESTAMPTZ;
+    upper_bound TIMESTAMPTZ;
+    created INTEGER := 0;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        partition_name := 'heart_rate_readings_' || to_char(month_start, 'YYYY_MM');
+        lower_bound := month_start::TIMESTAMP AT TIME ZONE 'UTC';
+        upper_bound := (month_start + INTERVAL '1 month')::TIMESTAMP AT TIME ZONE 'UTC';
+        IF to_regclass('public.' || partition_name) IS NULL THEN
+            -- Built standalone and attached, so rows can be moved in from the default partition
+            -- first; attaching then checks the default partition holds none for this month
+            EXECUTE format('CREATE TABLE public.%I (LIKE public.heart_rate_readings INCLUDING DEFAULTS INCLUDING CONSTRAINTS)',
+                           partition_name);
+            EXECUTE format('ALTER TABLE public.%I ADD CONSTRAINT %I CHECK (timestamp >= %L AND timestamp < %L)',
+                           partition_name, partition_name || '_bounds', lower_bound, upper_bound);
+            EXECUTE format('WITH moved AS (DELETE FROM public.heart_rate_readings_default '
+                           'WHERE timestamp >= %L AND timestamp < %L RETURNING *) '
+                           'INSERT INTO public.%I SELECT * FROM moved',
+                           lower_bound, upper_bound, partition_name);
+            -- The bounds check lets the attach skip scanning the partition
+            EXECUTE format('ALTER TABLE public.heart_rate_readings ATTACH PARTITION public.%I FOR VALUES FROM (%L) TO (%L)',
+                           partition_name, lower_bound, upper_bound);
+            EXECUTE format('ALTER TABLE public.%I DROP CONSTRAINT %I', partition_name, partition_name || '_bounds');
+            EXECUTE format('ALTER TABLE public.%I ENABLE ROW LEVEL SECURITY', partition_name);
+            EXECUTE format('REVOKE ALL ON public.%I FROM anon, authenticated', partition_name);
+            created := created + 1;
+        END IF;
+        month_start := (month_start + INTERVAL '1 month')::DATE;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.ensure_heart_rate_partitions(DATE, INTEGER) FROM PUBLIC, anon, authenticated;
+
+-- Detach the monthly partitions that end on or before p_before, returning their names.
+-- Detaching only changes the catalog: no rows are deleted or rewritten and no rollup trigger
+-- fires, so heart_rate_hourly and heart_rate_daily keep covering the detached months.
+-- The detached tables stay in place to be archived or dropped.
+CREATE OR REPLACE FUNCTION public.detach_heart_rate_partitions(p_before DATE)
+RETURNS SETOF TEXT AS $$
+DECLARE
+    partition_name TEXT;
+BEGIN
+    FOR partition_name IN
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'public.heart_rate_readings'::regclass
+              AND c.relname ~ '^heart_rate_readings_[0-9]{4}_[0-9]{2}$'
+              AND to_date(right(c.relname, 7), 'YYYY_MM') + INTERVAL '1 month' <= p_before
+        ORDER BY c.relname
+    LOOP
+        EXECUTE format('ALTER TABLE public.heart_rate_readings DETACH PARTITION public.%I', partition_name);
+        RETURN NEXT partition_name;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.detach_heart_rate_partitions(DATE) FROM PUBLIC, anon, authenticated;
+
+SELECT public.ensure_heart_rate_partitions();
+
+-- Copy the readings of a pre-partitioning deployment into the partitioned table. The insert
+-- fires the rollup triggers, which also fills the rollups for readings older than them.
+DO $$
+DECLARE
+    first_month DATE;
+BEGIN
+    IF to_regclass('public.heart_rate_readings_unpartitioned') IS NOT NULL THEN
+        SELECT date_trunc('month', MIN(timestamp) AT TIME ZONE 'UTC')::DATE INTO first_month
+        FROM public.heart_rate_readings_unpartitioned;
+        IF first_month IS NOT NULL THEN
+            PERFORM public.ensure_heart_rate_partitions(first_month);
+        END IF;
+        INSERT INTO public.heart_rate_readings (id, user_id, timestamp, heart_rate_bpm, source, created_at)
+        SELECT id, user_id, timestamp, heart_rate_bpm, source, created_at
+        FROM public.heart_rate_readings_unpartitioned
+        ON CONFLICT (user_id, timestamp) DO NOTHING;
+        DROP TABLE public.heart_rate_readings_unpartitioned;
+    END IF;
+END $$;
+
+-- Keep three months of partitions ahead, where pg_cron is available
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_cron') THEN
+        PERFORM cron.schedule('ensure-heart-rate-partitions', '0 3 * * *',
+                              'SELECT public.ensure_heart_rate_partitions()');
+    END IF;
+END $$;
+
+-- ============================================================================
+-- RETENTION
+-- ============================================================================
+
+-- Compact one user's heart rate readings older than p_retention_days: for each UTC day, oldest
+-- first, bring that day's hourly and daily rollups up to date and then delete its raw readings.
+-- Days are handled whole, so no rollup bucket is left half deleted. Stops after the day that
+-- reaches p_max_rows deleted rows and returns the number deleted; call again until it returns 0.
+CREATE OR REPLACE FUNCTION public.compact_heart_rate_readings(p_user_id UUID, p_retention_days INTEGER,
+                                                              p_max_rows INTEGER DEFAULT 50000)
+RETURNS INTEGER AS $$
+DECLARE
+    cutoff TIMESTAMPTZ := date_trunc('day', NOW() - make_interval(days => p_retention_days), 'UTC');
+    day_start TIMESTAMPTZ;
+    hours TIMESTAMPTZ[];
+    deleted INTEGER;
+    total INTEGER := 0;
+BEGIN
+    PERFORM set_config('flowstate.compacting', 'on', true);
+    WHILE total < p_max_rows LOOP
+        SELECT date_trunc('day', MIN(timestamp), 'UTC') INTO day_start
+        FROM public.heart_rate_readings
+        WHERE user_id = p_user_id AND timestamp < cutoff;
+        EXIT WHEN day_start IS NULL;
+
+        SELECT array_agg(h) INTO hours
+        FROM generate_series(day_start, day_start + INTERVAL '23 hours', INTERVAL '1 hour') AS h;
+        PERFORM refresh_heart_rate_rollups(array_fill(p_user_id, ARRAY[24]), hours);
+
+        DELETE FROM public.heart_rate_readings
+        WHERE user_id = p_user_id AND timestamp >= day_start AND timestamp < day_start + INTERVAL '1 day';
+        GET DIAGNOSTICS deleted = ROW_COUNT;
+        total := total + deleted;
+    END LOOP;
+    PERFORM set_config('flowstate.compacting', 'off', true);
+    RETURN total;
+END;
+$$ LANGUAGE plpgsql SECURITY DEFINER SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.compact_heart_rate_readings(UUID, INTEGER, INTEGER) FROM PUBLIC, anon, authenticated;
+
+-- Client-triggered compaction of the caller's own raw readings, using their retention setting.
+-- Bounded per call, so the client repeats it while a full batch was deleted.
+CREATE OR REPLACE FUNCTION public.compact_my_raw_biometrics(p_max_rows INTEGER DEFAULT 50000)
+RETURNS TABLE (table_name TEXT, deleted_rows INTEGER) AS $$
+DECLARE
+    retention INTEGER;
+BEGIN
+    SELECT s.raw_retention_days INTO retention FROM public.user_settings s WHERE s.user_id = auth.uid();
+    table_name := 'heart_rate_readings';
+    deleted_rows := 0;
+    IF auth.uid() IS NOT NULL AND retention IS NOT NULL THEN
+        deleted_rows := public.compact_heart_rate_readings(auth.uid(), retention, LEAST(GREATEST(p_max_rows, 1), 50000));
+    END IF;
+    RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql SECURITY DEFINER SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.compact_my_raw_biometrics(INTEGER) FROM PUBLIC, anon;
+GRANT EXECUTE ON FUNCTION public.compact_my_raw_biometrics(INTEGER) TO authenticated;
+
+-- Compact every user with a retention setting, up to p_max_rows_per_user each, returning the
+-- total deleted. Meant for a scheduled job; users still over their budget continue next run.
+CREATE OR REPLACE FUNCTION public.compact_raw_biometrics(p_max_rows_per_user INTEGER DEFAULT 50000)
+RETURNS BIGINT AS $$
+DECLARE
+    setting RECORD;
+    total BIGINT := 0;
+BEGIN
+    FOR setting IN
+        SELECT user_id, raw_retention_days FROM public.user_settings WHERE raw_retention_days IS NOT NULL
+    LOOP
+        total := total + public.compact_heart_rate_readings(setting.user_id, setting.raw_retention_days,
+                                                             p_max_rows_per_user);
+    END LOOP;
+    RETURN total;
+END;
+$$ LANGUAGE plpgsql SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.compact_raw_biometrics(INTEGER) FROM PUBLIC, anon, authenticated;
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_cron') THEN
+        PERFORM cron.schedule('compact-raw-biometrics', '30 3 * * *',
+                              'SELECT public.compact_raw_biometrics()');
+    END IF;
+END $$;
+
+-- ============================================================================
+-- FORECASTS
+-- ============================================================================
+
+-- Store a forecast for the caller in one transaction. Takes the request body as its single
+-- unnamed argument: a JSON array of predictions, each with prediction_time, predicted_level,
+-- confidence_score, an optional ml_model_version and optional biometric_factors and
+-- cognitive_factors objects mapping factor name to value. Each prediction is upserted on
+-- (user_id, prediction_time) and its factors replaced by the ones given; if a time appears
+-- more than once, the last entry wins, so queued forecasts can be replayed as one array.
+-- A revised prediction gets a new created_at so delta syncs read it again. Returns the
+-- number of predictions stored.
+CREATE OR REPLACE FUNCTION public.store_energy_forecast(JSONB)
+RETURNS INTEGER AS $$
+DECLARE
+    uid UUID := auth.uid();
+    stored INTEGER;
+BEGIN
+    IF uid IS NULL THEN
+        RAISE EXCEPTION 'Not authenticated' USING ERRCODE = '42501';
+    END IF;
+    IF jsonb_typeof($1) IS DISTINCT FROM 'array' THEN
+        RAISE EXCEPTION 'Expected a JSON array of predictions' USING ERRCODE = '22023';
+    END IF;
+
+    WITH forecast AS (
+        SELECT DISTINCT ON ((p.value->>'prediction_time')::TIMESTAMPTZ)
+               (p.value->>'prediction_time')::TIMESTAMPTZ AS prediction_time,
+               p.value AS prediction
+        FROM jsonb_array_elements($1) WITH ORDINALITY AS p(value, ord)
+        ORDER BY (p.value->>'prediction_time')::TIMESTAMPTZ, p.ord DESC
+    ),
+    upserted AS (
+        INSERT INTO public.energy_predictions
+            (user_id, prediction_time, predicted_level, confidence_score, ml_model_version)
+        SELECT uid, i.prediction_time, i.prediction->>'predicted_level',
+               (i.prediction->>'confidence_score')::DOUBLE PRECISION,
+               COALESCE(i.prediction->>'ml_model_version', 'v1.0')
+        FROM forecast i
+        ON CONFLICT (user_id, prediction_time) DO UPDATE
+            SET predicted_level = EXCLUDED.predicted_level,
+                confidence_score = EXCLUDED.confidence_score,
+                ml_model_version = EXCLUDED.ml_model_version,
+                created_at = NOW()
+        RETURNING id, prediction_time
+    ),
+    -- Runs against the snapshot from before the statement, so only the old factors go
+    cleared AS (
+        DELETE FROM public.energy_prediction_factors f
+        USING upserted u
+        WHERE f.prediction_id = u.id
+    ),
+    factors AS (
+        INSERT INTO public.energy_prediction_factors (prediction_id, factor_type, factor_name, factor_value)
+        SELECT u.id, kind.factor_type, factor.key, factor.value::DOUBLE PRECISION
+        FROM upserted u
+        JOIN forecast i ON i.prediction_time = u.prediction_time
+        CROSS JOIN LATERAL (VALUES ('biometric', i.prediction->'biometric_factors'),
+                                   ('cognitive', i.prediction->'cognitive_factors')) AS kind(factor_type, items)
+        CROSS JOIN LATERAL jsonb_each_text(
+            CASE WHEN jsonb_typeof(kind.items) = 'object' THEN kind.items ELSE '{}'::JSONB END) AS factor
+        WHERE factor.value IS NOT NULL
+    )
+    SELECT count(*) INTO stored FROM upserted;
+    RETURN stored;
+END;
+$$ LANGUAGE plpgsql SECURITY DEFINER SET search_path = public;
+
+REVOKE EXECUTE ON FUNCTION public.store_energy_forecast(JSONB) FROM PUBLIC, anon;
+GRANT EXECUTE ON FUNCTION public.store_energy_forecast(JSONB) TO authenticated;